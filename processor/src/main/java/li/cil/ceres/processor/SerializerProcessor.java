@@ -0,0 +1,326 @@
+package li.cil.ceres.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor generating serializers for types using {@link li.cil.ceres.api.Serialized} at compile time.
+ * <p>
+ * Generated serializers are plain Java classes placed in the package of the type they serialize. They are
+ * registered as services for {@code li.cil.ceres.internal.PrecompiledSerializer}, so that Ceres discovers
+ * them when initializing, instead of generating serializers for these types at runtime.
+ * <p>
+ * Serializers are generated for types that are annotated with {@link li.cil.ceres.api.Serialized} or
+ * declare fields annotated with it, as well as for their superclasses declared in the same compilation.
+ * Types for which the set of serialized fields cannot be determined at compile time are skipped; these
+ * will have their serializers generated at runtime, as before. In particular, this is the case for types
+ * with {@code final} fields whose mutability depends on serializers registered at runtime.
+ */
+@SupportedAnnotationTypes(SerializerProcessor.SERIALIZED_ANNOTATION)
+public final class SerializerProcessor extends AbstractProcessor {
+    static final String SERIALIZED_ANNOTATION = "li.cil.ceres.api.Serialized";
+    private static final String SERVICE_FILE = "META-INF/services/li.cil.ceres.internal.PrecompiledSerializer";
+
+    // Types Ceres registers explicit serializers for during initialization.
+    private static final Set<String> BUILT_IN_SERIALIZED_TYPES = Set.of("java.nio.ByteBuffer", "java.util.UUID");
+
+    private final Set<String> generatedSerializers = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+
+        final TypeElement serialized = processingEnv.getElementUtils().getTypeElement(SERIALIZED_ANNOTATION);
+        if (serialized == null) {
+            return false;
+        }
+
+        final Set<TypeElement> types = new LinkedHashSet<>();
+        for (final Element element : roundEnv.getElementsAnnotatedWith(serialized)) {
+            if (element.getKind() == ElementKind.FIELD) {
+                types.add((TypeElement) element.getEnclosingElement());
+            } else if (element.getKind() == ElementKind.CLASS) {
+                types.add((TypeElement) element);
+            }
+        }
+
+        // Also cover superclasses declared in this compilation, since their serializers are
+        // invoked to serialize the fields declared in them.
+        final Set<? extends Element> rootElements = roundEnv.getRootElements();
+        for (final TypeElement type : new ArrayList<>(types)) {
+            TypeElement parentType = getSuperclass(type);
+            while (parentType != null && rootElements.contains(getOutermostType(parentType))) {
+                types.add(parentType);
+                parentType = getSuperclass(parentType);
+            }
+        }
+
+        for (final TypeElement type : types) {
+            generateSerializer(type);
+        }
+
+        // Do not claim the annotation, other processors may be interested in it, too.
+        return false;
+    }
+
+    private void generateSerializer(final TypeElement type) {
+        final String serializerName = SerializerWriter.getSerializerName(processingEnv.getElementUtils(), type);
+        if (generatedSerializers.contains(serializerName)) {
+            return;
+        }
+
+        final List<VariableElement> fields;
+        try {
+            validateType(type);
+            fields = collectSerializableFields(type, new ArrayList<>());
+            for (final VariableElement field : fields) {
+                if (!isAccessible(field.asType(), type)) {
+                    throw new UnsupportedTypeException(String.format("type of field [%s] is not accessible", field.getSimpleName()), Diagnostic.Kind.NOTE);
+                }
+            }
+        } catch (final UnsupportedTypeException e) {
+            processingEnv.getMessager().printMessage(e.kind, String.format("Not generating serializer for [%s] at compile time, %s. It will be generated at runtime instead.", type.getQualifiedName(), e.getMessage()), type);
+            return;
+        }
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(serializerName, type);
+            try (final Writer writer = file.openWriter()) {
+                writer.write(new SerializerWriter(processingEnv, type, fields, hasDefaultConstructor(type)).write());
+            }
+            generatedSerializers.add(serializerName);
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, String.format("Failed writing serializer for [%s]: %s", type.getQualifiedName(), e.getMessage()), type);
+        }
+    }
+
+    private void writeServiceFile() {
+        if (generatedSerializers.isEmpty()) {
+            return;
+        }
+
+        try {
+            final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (final Writer writer = file.openWriter()) {
+                for (final String serializerName : generatedSerializers) {
+                    writer.write(serializerName);
+                    writer.write('\n');
+                }
+            }
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, String.format("Failed writing service file [%s]: %s", SERVICE_FILE, e.getMessage()));
+        }
+    }
+
+    private void validateType(final TypeElement type) throws UnsupportedTypeException {
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            throw new UnsupportedTypeException("local and anonymous types are not supported", Diagnostic.Kind.NOTE);
+        }
+        if (!isAccessible(type, getPackage(type))) {
+            throw new UnsupportedTypeException("type is not accessible from its package", Diagnostic.Kind.NOTE);
+        }
+        if (isCreated(type)) {
+            throw new UnsupportedTypeException("records and types created using a constructor or factory method are not supported", Diagnostic.Kind.NOTE);
+        }
+    }
+
+    private boolean isCreated(final TypeElement type) {
+        if (type.getKind() == ElementKind.RECORD) {
+            return true;
+        }
+        for (final Element element : type.getEnclosedElements()) {
+            if ((element.getKind() == ElementKind.CONSTRUCTOR || element.getKind() == ElementKind.METHOD) && isSerialized(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Mirrors the logic in SerializerUtils, which is used when generating serializers at runtime.
+    private List<VariableElement> collectSerializableFields(final TypeElement type, final List<TypeElement> seenTypes) throws UnsupportedTypeException {
+        final boolean serializeFields = isSerialized(type);
+        final List<VariableElement> fields = new ArrayList<>();
+        for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final Set<Modifier> modifiers = field.getModifiers();
+
+            // We do not serialize static fields.
+            if (modifiers.contains(Modifier.STATIC)) {
+                if (isSerialized(field)) {
+                    throw new UnsupportedTypeException(String.format("serialization is used on static field [%s.%s]", type.getQualifiedName(), field.getSimpleName()), Diagnostic.Kind.WARNING);
+                }
+                continue;
+            }
+
+            // We do not serialize transient fields.
+            if (modifiers.contains(Modifier.TRANSIENT)) {
+                if (isSerialized(field)) {
+                    throw new UnsupportedTypeException(String.format("serialization is used on transient field [%s.%s]", type.getQualifiedName(), field.getSimpleName()), Diagnostic.Kind.WARNING);
+                }
+                continue;
+            }
+
+            // We do not serialize final fields holding immutable values.
+            // We *do* serialize final fields holding values that we can deserialize into.
+            if (modifiers.contains(Modifier.FINAL) && isImmutable(field.asType(), concat(seenTypes, type))) {
+                if (isSerialized(field)) {
+                    throw new UnsupportedTypeException(String.format("serialization is used on immutable field [%s.%s]", type.getQualifiedName(), field.getSimpleName()), Diagnostic.Kind.WARNING);
+                }
+                continue;
+            }
+
+            if (serializeFields || isSerialized(field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private boolean isImmutable(final TypeMirror type, final List<TypeElement> seenTypes) throws UnsupportedTypeException {
+        if (type.getKind().isPrimitive()) return true; // Primitives are immutable by definition.
+        if (type.getKind() == TypeKind.ARRAY) return false; // Arrays are mutable by definition.
+
+        final TypeElement element = (TypeElement) processingEnv.getTypeUtils().asElement(processingEnv.getTypeUtils().erasure(type));
+        if (element.getKind() == ElementKind.ENUM) return true; // Enum values are immutable by definition.
+        if (isCreated(element)) return true; // Values created anew on deserialization cannot be deserialized into.
+        if (BUILT_IN_SERIALIZED_TYPES.contains(element.getQualifiedName().toString()))
+            return false; // If we have a serializer we can serialize into this type.
+        if (hasSerializableFields(element, seenTypes)) return false;
+
+        // Types in java.lang are assumed to never get a custom serializer. For all other types
+        // this depends on the serializers registered at runtime.
+        if (getPackage(element).getQualifiedName().contentEquals("java.lang")) return true;
+
+        throw new UnsupportedTypeException(String.format("mutability of final field type [%s] depends on serializers registered at runtime", element.getQualifiedName()), Diagnostic.Kind.NOTE);
+    }
+
+    private boolean hasSerializableFields(final TypeElement type, final List<TypeElement> seenTypes) throws UnsupportedTypeException {
+        // If we have a cycle that means this path will only ever lead to final fields
+        // holding immutable values or null. Terminate this path.
+        if (seenTypes.contains(type)) {
+            return false;
+        }
+
+        if (!collectSerializableFields(type, seenTypes).isEmpty()) {
+            return true;
+        }
+
+        final TypeElement parentType = getSuperclass(type);
+        if (parentType == null) {
+            return false;
+        }
+
+        return hasSerializableFields(parentType, seenTypes);
+    }
+
+    private boolean hasDefaultConstructor(final TypeElement type) {
+        // Inner classes implicitly take their outer instance as a constructor parameter.
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSerialized(final Element element) {
+        for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(SERIALIZED_ANNOTATION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAccessible(final TypeMirror type, final TypeElement fromType) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        final TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) erasure).getComponentType(), fromType);
+        }
+        if (erasure.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        return isAccessible((TypeElement) ((DeclaredType) erasure).asElement(), getPackage(fromType));
+    }
+
+    private boolean isAccessible(final TypeElement type, final PackageElement fromPackage) {
+        final boolean isSamePackage = getPackage(type).equals(fromPackage);
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            final Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!modifiers.contains(Modifier.PUBLIC) && !isSamePackage) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PackageElement getPackage(final Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    private static TypeElement getOutermostType(final TypeElement type) {
+        TypeElement outermostType = type;
+        while (outermostType.getEnclosingElement() instanceof final TypeElement enclosingType) {
+            outermostType = enclosingType;
+        }
+        return outermostType;
+    }
+
+    private static TypeElement getSuperclass(final TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final TypeElement parentType = (TypeElement) ((DeclaredType) superclass).asElement();
+        if (parentType.getQualifiedName().contentEquals("java.lang.Object")) {
+            return null;
+        }
+        return parentType;
+    }
+
+    private static <T> List<T> concat(final List<T> list, final T value) {
+        final List<T> newList = new ArrayList<>(list);
+        newList.add(value);
+        return newList;
+    }
+
+    private static final class UnsupportedTypeException extends Exception {
+        private final Diagnostic.Kind kind;
+
+        private UnsupportedTypeException(final String message, final Diagnostic.Kind kind) {
+            super(message);
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package li.cil.ceres.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import java.util.List;
+
+/**
+ * Writes the Java source of a serializer for a single type.
+ * <p>
+ * The generated code is equivalent to the bytecode generated by {@code CompiledSerializer} at runtime,
+ * i.e. it produces and consumes the exact same sequence of visitor calls. Fields that are not accessible
+ * from the generated class, as well as inaccessible default constructors, are accessed via
+ * {@link java.lang.invoke.VarHandle}s and {@link java.lang.invoke.MethodHandle}s obtained once when the
+ * serializer class is initialized.
+ */
+final class SerializerWriter {
+    private static final String SERIALIZER_PREFIX = "Ceres_";
+
+    private final ProcessingEnvironment processingEnv;
+    private final TypeElement type;
+    private final List<VariableElement> fields;
+    private final boolean hasDefaultConstructor;
+    private final StringBuilder source = new StringBuilder();
+    private int indent;
+
+    SerializerWriter(final ProcessingEnvironment processingEnv, final TypeElement type, final List<VariableElement> fields, final boolean hasDefaultConstructor) {
+        this.processingEnv = processingEnv;
+        this.type = type;
+        this.fields = fields;
+        this.hasDefaultConstructor = hasDefaultConstructor;
+    }
+
+    static String getSerializerName(final Elements elements, final TypeElement type) {
+        final PackageElement packageElement = elements.getPackageOf(type);
+        final String simpleName = getSerializerSimpleName(type);
+        if (packageElement.isUnnamed()) {
+            return simpleName;
+        } else {
+            return packageElement.getQualifiedName() + "." + simpleName;
+        }
+    }
+
+    String write() {
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        final String typeName = type.getQualifiedName().toString();
+        final boolean needsConstructorHandle = hasDefaultConstructor && !isConstructorAccessible();
+
+        line("// Generated by the Ceres annotation processor. Do not edit.");
+        if (!packageElement.isUnnamed()) {
+            line("package %s;", packageElement.getQualifiedName());
+        }
+        line();
+        line("import li.cil.ceres.api.DeserializationVisitor;");
+        line("import li.cil.ceres.api.SerializationException;");
+        line("import li.cil.ceres.api.SerializationVisitor;");
+        line("import li.cil.ceres.internal.PrecompiledSerializer;");
+        line();
+        line("import javax.annotation.processing.Generated;");
+        line("import java.lang.invoke.MethodHandle;");
+        line("import java.lang.invoke.MethodHandles;");
+        line("import java.lang.invoke.MethodType;");
+        line("import java.lang.invoke.VarHandle;");
+        line();
+        line("@Generated(\"%s\")", SerializerProcessor.class.getName());
+        line("@SuppressWarnings({\"rawtypes\", \"unchecked\"})");
+        open("public final class %s implements PrecompiledSerializer<%s>", getSerializerSimpleName(type), typeName);
+
+        // Handles for members not accessible from the generated class.
+        final boolean needsHandles = needsConstructorHandle || fields.stream().anyMatch(SerializerWriter::isPrivate);
+        if (needsHandles) {
+            for (final VariableElement field : fields) {
+                if (isPrivate(field)) {
+                    line("private static final VarHandle %s;", getHandleName(field));
+                }
+            }
+            if (needsConstructorHandle) {
+                line("private static final MethodHandle CONSTRUCTOR;");
+            }
+            line();
+            open("static");
+            open("try");
+            line("final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(%s.class, MethodHandles.lookup());", typeName);
+            for (final VariableElement field : fields) {
+                if (isPrivate(field)) {
+                    line("%s = lookup.findVarHandle(%s.class, \"%s\", %s.class);", getHandleName(field), typeName, field.getSimpleName(), getTypeName(field.asType()));
+                }
+            }
+            if (needsConstructorHandle) {
+                line("CONSTRUCTOR = lookup.findConstructor(%s.class, MethodType.methodType(void.class));", typeName);
+            }
+            close("} catch (final ReflectiveOperationException e) {");
+            indent++;
+            line("throw new ExceptionInInitializerError(e);");
+            close();
+            close();
+            line();
+        }
+
+        line("@Override");
+        open("public Class<%s> getSerializedType()", typeName);
+        line("return %s.class;", typeName);
+        close();
+        line();
+
+        line("@Override");
+        open("public boolean hasSerializedFields()");
+        line("return %s;", !fields.isEmpty());
+        close();
+        line();
+
+        writeSerializeMethod(typeName);
+        line();
+        writeDeserializeMethod(typeName, needsConstructorHandle);
+        line();
+        writeSkipMethod(typeName);
+
+        close();
+        return source.toString();
+    }
+
+    private void writeSerializeMethod(final String typeName) {
+        line("@Override");
+        open("public void serialize(final SerializationVisitor visitor, final Class<%s> type, final Object value) throws SerializationException", typeName);
+        line("final %s instance = (%s) value;", typeName, typeName);
+        final List<VariableElement> nullMaskFields = getNullMaskFields();
+        if (!nullMaskFields.isEmpty()) {
+            line("long nullMask = 0L;");
+            for (int i = 0; i < nullMaskFields.size(); i++) {
+                open("if (%s == null)", getFieldValue(nullMaskFields.get(i)));
+                line("nullMask |= 1L << %d;", i);
+                close();
+            }
+            line("visitor.putNullMask(nullMask, %d);", nullMaskFields.size());
+        }
+        for (final VariableElement field : fields) {
+            final TypeMirror fieldType = field.asType();
+            final String fieldName = field.getSimpleName().toString();
+            if (fieldType.getKind().isPrimitive()) {
+                line("visitor.%s(\"%s\", %s);", getPrimitiveMethodName("put", fieldType), fieldName, getFieldValue(field));
+            } else {
+                final String fieldTypeName = getTypeName(fieldType);
+                open("");
+                line("final Object fieldValue = %s;", getFieldValue(field));
+                open("if (fieldValue != null && fieldValue.getClass() != %s.class)", fieldTypeName);
+                line("PrecompiledSerializer.validatePolymorphicFieldValue(fieldValue, %s.class, %s.class, \"%s\");", fieldTypeName, typeName, fieldName);
+                close();
+                line("visitor.putObject(\"%s\", %s.class, fieldValue);", fieldName, fieldTypeName);
+                close();
+            }
+        }
+        if (hasSuperclass()) {
+            line("visitor.putSuperclass(\"<super>\", %s.class.getSuperclass(), value);", typeName);
+        }
+        close();
+    }
+
+    private void writeDeserializeMethod(final String typeName, final boolean needsConstructorHandle) {
+        line("@Override");
+        open("public %s deserialize(final DeserializationVisitor visitor, final Class<%s> type, Object value) throws SerializationException", typeName, typeName);
+        open("if (value == null)");
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            line("throw new SerializationException(String.format(\"Cannot create new instance of abstract type [%%s].\", %s.class));", typeName);
+        } else if (!hasDefaultConstructor) {
+            line("throw new SerializationException(String.format(\"Cannot create new instance of type without a default constructor [%%s].\", %s.class));", typeName);
+        } else if (needsConstructorHandle) {
+            open("try");
+            line("value = (%s) CONSTRUCTOR.invoke();", typeName);
+            close("} catch (final Throwable e) {");
+            indent++;
+            line("throw new SerializationException(String.format(\"Failed instantiating type [%%s]\", %s.class.getName()), e);", typeName);
+            close();
+        } else {
+            line("value = new %s();", typeName);
+        }
+        close();
+        line();
+        line("final %s instance = (%s) value;", typeName, typeName);
+        writeGetNullMaskCall();
+        writeIsPositionalCall();
+        for (final VariableElement field : fields) {
+            final TypeMirror fieldType = field.asType();
+            final String fieldName = field.getSimpleName().toString();
+            open("if (isPositional || visitor.exists(\"%s\"))", fieldName);
+            if (fieldType.getKind().isPrimitive()) {
+                line(setFieldValue(field, String.format("visitor.%s(\"%s\")", getPrimitiveMethodName("get", fieldType), fieldName)));
+            } else {
+                final String fieldTypeName = getTypeName(fieldType);
+                final String getObject = String.format("visitor.getObject(\"%s\", %s.class, %s)", fieldName, fieldTypeName, getFieldValue(field));
+                if (field.getModifiers().contains(Modifier.FINAL)) {
+                    // Must deserialize into existing final field references, we never overwrite final field values.
+                    line("%s;", getObject);
+                } else {
+                    line(setFieldValue(field, String.format("(%s) %s", fieldTypeName, getObject)));
+                }
+            }
+            close();
+        }
+        if (hasSuperclass()) {
+            line("visitor.getSuperclass(\"<super>\", %s.class.getSuperclass(), value);", typeName);
+        }
+        line("return instance;");
+        close();
+    }
+
+    private void writeSkipMethod(final String typeName) {
+        line("@Override");
+        open("public void skip(final DeserializationVisitor visitor, final Class<%s> type) throws SerializationException", typeName);
+        writeGetNullMaskCall();
+        writeIsPositionalCall();
+        for (final VariableElement field : fields) {
+            final String fieldName = field.getSimpleName().toString();
+            open("if (isPositional || visitor.exists(\"%s\"))", fieldName);
+            line("visitor.skip(\"%s\", %s.class);", fieldName, getTypeName(field.asType()));
+            close();
+        }
+        if (hasSuperclass()) {
+            line("visitor.skipSuperclass(\"<super>\", %s.class.getSuperclass());", typeName);
+        }
+        close();
+    }
+
+    private void writeIsPositionalCall() {
+        if (!fields.isEmpty()) {
+            line("final boolean isPositional = visitor.isPositional();");
+        }
+    }
+
+    private void writeGetNullMaskCall() {
+        final int nullMaskFieldCount = getNullMaskFields().size();
+        if (nullMaskFieldCount > 0) {
+            line("visitor.getNullMask(%d);", nullMaskFieldCount);
+        }
+    }
+
+    /**
+     * The fields covered by the null mask, the first 64 non-primitive fields, same as for runtime serializers.
+     */
+    private List<VariableElement> getNullMaskFields() {
+        return fields.stream()
+                .filter(field -> !field.asType().getKind().isPrimitive())
+                .limit(Long.SIZE)
+                .toList();
+    }
+
+    private String getFieldValue(final VariableElement field) {
+        if (isPrivate(field)) {
+            // Cast to the exact field type so the VarHandle invocation is exact.
+            return String.format("(%s) %s.get(instance)", getTypeName(field.asType()), getHandleName(field));
+        } else {
+            return "instance." + field.getSimpleName();
+        }
+    }
+
+    private String setFieldValue(final VariableElement field, final String value) {
+        if (isPrivate(field)) {
+            return String.format("%s.set(instance, %s);", getHandleName(field), value);
+        } else {
+            return String.format("instance.%s = %s;", field.getSimpleName(), value);
+        }
+    }
+
+    private boolean isConstructorAccessible() {
+        for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()) {
+                return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+        return false;
+    }
+
+    private boolean hasSuperclass() {
+        final TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED &&
+               !((TypeElement) ((DeclaredType) superclass).asElement()).getQualifiedName().contentEquals("java.lang.Object");
+    }
+
+    private String getTypeName(final TypeMirror type) {
+        final TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind().isPrimitive()) {
+            return erasure.getKind().name().toLowerCase();
+        } else if (erasure.getKind() == TypeKind.ARRAY) {
+            return getTypeName(((ArrayType) erasure).getComponentType()) + "[]";
+        } else {
+            return ((TypeElement) ((DeclaredType) erasure).asElement()).getQualifiedName().toString();
+        }
+    }
+
+    private static String getPrimitiveMethodName(final String prefix, final TypeMirror type) {
+        final String name = type.getKind().name();
+        return prefix + name.charAt(0) + name.substring(1).toLowerCase();
+    }
+
+    private static String getSerializerSimpleName(final TypeElement type) {
+        final StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element element = type.getEnclosingElement(); element instanceof TypeElement; element = element.getEnclosingElement()) {
+            name.insert(0, '_').insert(0, element.getSimpleName());
+        }
+        return SERIALIZER_PREFIX + name;
+    }
+
+    private static String getHandleName(final VariableElement field) {
+        return "FIELD_" + field.getSimpleName();
+    }
+
+    private static boolean isPrivate(final VariableElement field) {
+        return field.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    private void open(final String format, final Object... args) {
+        final String header = String.format(format, args);
+        line(header.isEmpty() ? "{" : header + " {");
+        indent++;
+    }
+
+    private void close() {
+        close("}");
+    }
+
+    private void close(final String line) {
+        indent--;
+        line(line);
+    }
+
+    private void line() {
+        source.append('\n');
+    }
+
+    private void line(final String format, final Object... args) {
+        source.append("    ".repeat(indent)).append(args.length == 0 ? format : String.format(format, args)).append('\n');
+    }
+}
@@ -0,0 +1,141 @@
+package li.cil.ceres.processor;
+
+import li.cil.ceres.BinarySerialization;
+import li.cil.ceres.Ceres;
+import li.cil.ceres.api.Serializer;
+import li.cil.ceres.internal.PrecompiledSerializer;
+import li.cil.ceres.internal.SerializerFactory;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SerializerProcessorTests {
+    private static final String SOURCE = """
+            package test;
+
+            import li.cil.ceres.api.Serialized;
+
+            import java.util.UUID;
+
+            @Serialized
+            public class Sample extends Base {
+                public enum Kind {A, B}
+
+                private int privateInt;
+                long packageLong;
+                public String string;
+                private Kind kind;
+                private final int[] finalArray = new int[2];
+                public Nested nested;
+                public UUID uuid;
+                transient int ignored;
+
+                private Sample() {
+                }
+
+                public static Sample create() {
+                    final Sample value = new Sample();
+                    value.privateInt = 1;
+                    value.packageLong = 2;
+                    value.string = "three";
+                    value.kind = Kind.B;
+                    value.finalArray[0] = 4;
+                    value.finalArray[1] = 5;
+                    value.nested = new Nested();
+                    value.nested.value = 6;
+                    value.uuid = new UUID(7, 8);
+                    value.baseValue = 9;
+                    return value;
+                }
+
+                public String describe() {
+                    return privateInt + "," + packageLong + "," + string + "," + kind + "," +
+                           finalArray[0] + "," + finalArray[1] + "," + nested.value + "," + uuid + "," + baseValue;
+                }
+
+                public static final class Nested {
+                    @Serialized private int value;
+                }
+            }
+
+            class Base {
+                @Serialized protected int baseValue;
+            }
+            """;
+
+    @Test
+    public void generatedSerializerMatchesRuntimeSerializer() throws Exception {
+        final Path output = compile();
+        try (final URLClassLoader classLoader = new URLClassLoader(new URL[]{output.toUri().toURL()}, getClass().getClassLoader())) {
+            Ceres.registerPrecompiledSerializers(classLoader);
+
+            final Class<?> type = classLoader.loadClass("test.Sample");
+            assertTrue(Ceres.getSerializer(type) instanceof PrecompiledSerializer);
+            assertTrue(Ceres.getSerializer(classLoader.loadClass("test.Sample$Nested")) instanceof PrecompiledSerializer);
+            assertTrue(Ceres.getSerializer(classLoader.loadClass("test.Base")) instanceof PrecompiledSerializer);
+
+            final Object value = type.getMethod("create").invoke(null);
+            final ByteBuffer serialized = BinarySerialization.serialize(value);
+            final Object deserialized = BinarySerialization.deserialize(serialized, type);
+            assertEquals(type.getMethod("describe").invoke(value), type.getMethod("describe").invoke(deserialized));
+
+            final ByteBuffer skipped = serialized.duplicate();
+            BinarySerialization.skipNext(skipped, type);
+            assertFalse(skipped.hasRemaining());
+
+            final BinarySerialization.Options packed = BinarySerialization.Options.DEFAULT.withBitPacking(true);
+            final ByteBuffer serializedPacked = serialize(value, type, packed);
+            assertEquals(type.getMethod("describe").invoke(value), type.getMethod("describe").invoke(BinarySerialization.deserialize(serializedPacked, type, null, packed)));
+
+            putRuntimeSerializer(type);
+            assertEquals(serialized, BinarySerialization.serialize(value));
+            assertEquals(serializedPacked, serialize(value, type, packed));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ByteBuffer serialize(final Object value, final Class<T> type, final BinarySerialization.Options options) {
+        return BinarySerialization.serialize((T) value, type, options);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void putRuntimeSerializer(final Class<T> type) {
+        final Serializer<T> serializer = SerializerFactory.generateSerializer(type);
+        Ceres.putSerializer(type, serializer);
+    }
+
+    private static Path compile() throws IOException {
+        final Path output = Files.createTempDirectory("ceres-processor-test");
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            fileManager.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(output));
+            fileManager.setLocationFromPaths(StandardLocation.SOURCE_OUTPUT, List.of(output));
+
+            final JavaFileObject source = new SimpleJavaFileObject(Path.of("test/Sample.java").toUri(), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                    return SOURCE;
+                }
+            };
+
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-classpath", System.getProperty("java.class.path")), null, List.of(source));
+            task.setProcessors(List.of(new SerializerProcessor()));
+            assertTrue(task.call(), diagnostics.getDiagnostics().toString());
+        }
+
+        assertTrue(Files.exists(output.resolve("test/Ceres_Sample.java")));
+        assertTrue(Files.exists(output.resolve("META-INF/services/li.cil.ceres.internal.PrecompiledSerializer")));
+        return output;
+    }
+}
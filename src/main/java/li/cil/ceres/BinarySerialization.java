@@ -3,14 +3,30 @@ package li.cil.ceres;
 import li.cil.ceres.api.DeserializationVisitor;
 import li.cil.ceres.api.SerializationException;
 import li.cil.ceres.api.SerializationVisitor;
+import li.cil.ceres.internal.BinaryDeserializationVisitor;
+import li.cil.ceres.internal.BinarySerializationVisitor;
 import org.jetbrains.annotations.Contract;
 
 import javax.annotation.Nullable;
 import java.io.*;
 import java.lang.reflect.Array;
-import java.nio.ByteBuffer;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * Provides binary serialization to and from {@link DataOutputStream}s/{@link DataInputStream}s and {@link ByteBuffer}s.
@@ -20,16 +36,102 @@ import java.util.Map;
  * be read exists in the serialized data. As such, this format is not suitable for use-cases where the data structures
  * that are serialized may change over time, as this will make the serialized data unreadable: the data structures
  * define the structure of the serialized data.
+ * <p>
+ * Serialization to and from {@link ByteBuffer}s operates on the buffers directly. Streams are written and read
+ * through an intermediate buffer. Both produce and consume the exact same format.
  */
 public final class BinarySerialization {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    private static final int MAPPED_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int MAPPED_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
     public static <T> void serialize(final DataOutputStream stream, final T value, final Class<T> type) throws SerializationException {
-        Ceres.getSerializer(type).serialize(new Serializer(stream), type, value);
+        serialize(new StreamSerializer(null).reset(stream), value, type);
+    }
+
+    /**
+     * Serializes a value into the specified stream, using the format described by the specified options.
+     * <p>
+     * The format is recorded in a header preceding the serialized data. Such data can only be read using
+     * one of the deserialization methods accepting {@link Options}.
+     *
+     * @param stream  the stream to serialize into.
+     * @param value   the value to serialize.
+     * @param type    the type of the value to serialize.
+     * @param options the options specifying the format to use.
+     * @throws SerializationException if an exception is raised during serialization.
+     */
+    public static <T> void serialize(final DataOutputStream stream, final T value, final Class<T> type, final Options options) throws SerializationException {
+        serialize(new StreamSerializer(options).reset(stream), value, type);
+    }
+
+    /**
+     * Serializes a value into the specified buffer, starting at its current position.
+     * <p>
+     * If the buffer does not have enough space remaining, a new, larger buffer of the same kind (heap or direct)
+     * is allocated, and the contents of the buffer up to the current write position are copied to it.
+     * <p>
+     * The returned buffer is positioned after the serialized data. It is the specified buffer, unless it had
+     * to be grown. The byte order of the specified buffer is ignored, data is always written in big-endian order.
+     *
+     * @param buffer the buffer to serialize into.
+     * @param value  the value to serialize.
+     * @param type   the type of the value to serialize.
+     * @return the buffer holding the serialized data.
+     * @throws SerializationException if an exception is raised during serialization.
+     */
+    public static <T> ByteBuffer serialize(final ByteBuffer buffer, final T value, final Class<T> type) throws SerializationException {
+        return serializeInto(buffer, value, type, null);
+    }
+
+    /**
+     * Serializes a value into the specified buffer, using the format described by the specified options.
+     * <p>
+     * Behaves like {@link #serialize(ByteBuffer, Object, Class)}, except that the format is recorded in a header
+     * preceding the serialized data, as with {@link #serialize(DataOutputStream, Object, Class, Options)}.
+     *
+     * @param buffer  the buffer to serialize into.
+     * @param value   the value to serialize.
+     * @param type    the type of the value to serialize.
+     * @param options the options specifying the format to use.
+     * @return the buffer holding the serialized data.
+     * @throws SerializationException if an exception is raised during serialization.
+     */
+    public static <T> ByteBuffer serialize(final ByteBuffer buffer, final T value, final Class<T> type, final Options options) throws SerializationException {
+        return serializeInto(buffer, value, type, options);
     }
 
+    /**
+     * Serializes a value into a new heap buffer.
+     * <p>
+     * The returned buffer wraps an array holding exactly the serialized data. To avoid copying the data into
+     * it, serialize into a reused buffer using {@link #serialize(ByteBuffer, Object, Class)} instead.
+     *
+     * @param value the value to serialize.
+     * @param type  the type of the value to serialize.
+     * @return a buffer holding the serialized data.
+     * @throws SerializationException if an exception is raised during serialization.
+     */
     public static <T> ByteBuffer serialize(final T value, final Class<T> type) throws SerializationException {
-        final ByteArrayOutputStream data = new ByteArrayOutputStream();
-        serialize(new DataOutputStream(data), value, type);
-        return ByteBuffer.wrap(data.toByteArray());
+        return toExactBuffer(serializeInto(ByteBuffer.allocate(INITIAL_BUFFER_SIZE), value, type, null));
+    }
+
+    /**
+     * Serializes a value into a new heap buffer, using the format described by the specified options.
+     * <p>
+     * Behaves like {@link #serialize(Object, Class)}, except that the format is recorded in a header preceding the
+     * serialized data, as with {@link #serialize(DataOutputStream, Object, Class, Options)}.
+     *
+     * @param value   the value to serialize.
+     * @param type    the type of the value to serialize.
+     * @param options the options specifying the format to use.
+     * @return a buffer holding the serialized data.
+     * @throws SerializationException if an exception is raised during serialization.
+     */
+    public static <T> ByteBuffer serialize(final T value, final Class<T> type, final Options options) throws SerializationException {
+        return toExactBuffer(serializeInto(ByteBuffer.allocate(INITIAL_BUFFER_SIZE), value, type, options));
     }
 
     public static <T> void serialize(final DataOutputStream stream, final T value) throws SerializationException {
@@ -42,8 +144,45 @@ public final class BinarySerialization {
         return serialize(value, type);
     }
 
+    private static ByteBuffer toExactBuffer(final ByteBuffer buffer) {
+        // Callers may use the backing array directly, so it must not contain anything but the serialized data.
+        if (buffer.position() == buffer.capacity()) {
+            return buffer.flip();
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    /**
+     * Deserializes a value from the specified stream.
+     * <p>
+     * Only the bytes belonging to the serialized value are read from the stream, so that any data following it
+     * may still be read from the stream afterwards.
+     *
+     * @param stream the stream to deserialize from.
+     * @param type   the type of the value to deserialize.
+     * @param into   the existing value to deserialize into, if any.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
     public static <T> T deserialize(final DataInputStream stream, final Class<T> type, @Nullable final T into) throws SerializationException {
-        return Ceres.getSerializer(type).deserialize(new Deserializer(stream), type, into);
+        return deserialize(new StreamDeserializer(null).reset(stream), type, into);
+    }
+
+    /**
+     * Deserializes a value written using {@link Options} from the specified stream.
+     * <p>
+     * The format of the data is read from the header preceding it, so the format settings of the specified options
+     * do not need to match the ones used when writing the data.
+     *
+     * @param stream  the stream to deserialize from.
+     * @param type    the type of the value to deserialize.
+     * @param into    the existing value to deserialize into, if any.
+     * @param options the options to use while reading.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
+    public static <T> T deserialize(final DataInputStream stream, final Class<T> type, @Nullable final T into, final Options options) throws SerializationException {
+        return deserialize(new StreamDeserializer(options).reset(stream), type, into);
     }
 
     public static <T> T deserialize(final DataInputStream stream, final Class<T> type) throws SerializationException {
@@ -55,681 +194,3352 @@ public final class BinarySerialization {
         return deserialize(stream, type, into);
     }
 
+    /**
+     * Deserializes a value from the specified buffer, starting at its current position.
+     * <p>
+     * Data is read from the buffer in place, without copying it, so any kind of buffer may be used, including
+     * direct, read-only and memory mapped buffers. Reads never go past the buffer's limit. The position of the
+     * buffer is not modified, use {@link #deserializeNext(ByteBuffer, Class, Object)} to consume the read data.
+     *
+     * @param data the buffer to deserialize from.
+     * @param type the type of the value to deserialize.
+     * @param into the existing value to deserialize into, if any.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
     public static <T> T deserialize(final ByteBuffer data, final Class<T> type, @Nullable final T into) throws SerializationException {
-        return deserialize(new DataInputStream(new ByteArrayInputStream(data.array())), type, into);
+        return deserializeFrom(data, type, into, null, false);
+    }
+
+    /**
+     * Deserializes a value written using {@link Options} from the specified buffer, starting at its current position.
+     * <p>
+     * Behaves like {@link #deserialize(ByteBuffer, Class, Object)}, except that the format of the data is read from
+     * the header preceding it, as with {@link #deserialize(DataInputStream, Class, Object, Options)}.
+     *
+     * @param data    the buffer to deserialize from.
+     * @param type    the type of the value to deserialize.
+     * @param into    the existing value to deserialize into, if any.
+     * @param options the options to use while reading.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
+    public static <T> T deserialize(final ByteBuffer data, final Class<T> type, @Nullable final T into, final Options options) throws SerializationException {
+        return deserializeFrom(data, type, into, options, false);
     }
 
     public static <T> T deserialize(final ByteBuffer data, final Class<T> type) throws SerializationException {
-        return deserialize(new DataInputStream(new ByteArrayInputStream(data.array())), type, null);
+        return deserialize(data, type, null);
     }
 
     public static <T> T deserialize(final ByteBuffer data, final T into) throws SerializationException {
-        return deserialize(new DataInputStream(new ByteArrayInputStream(data.array())), into);
+        @SuppressWarnings("unchecked") final Class<T> type = (Class<T>) into.getClass();
+        return deserialize(data, type, into);
     }
 
-    private static final int OBJECT_ARRAY_NULL_VALUE = -1;
-    private static final Map<Class<?>, ArraySerializer> ARRAY_SERIALIZERS;
+    /**
+     * Deserializes a value from the specified buffer, starting at its current position, and advances the
+     * position of the buffer past the read data.
+     * <p>
+     * This allows reading multiple values written back-to-back into a single buffer. Otherwise, this behaves
+     * like {@link #deserialize(ByteBuffer, Class, Object)}.
+     *
+     * @param data the buffer to deserialize from.
+     * @param type the type of the value to deserialize.
+     * @param into the existing value to deserialize into, if any.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
+    public static <T> T deserializeNext(final ByteBuffer data, final Class<T> type, @Nullable final T into) throws SerializationException {
+        return deserializeFrom(data, type, into, null, true);
+    }
 
-    static {
-        ARRAY_SERIALIZERS = new HashMap<>();
-        ARRAY_SERIALIZERS.put(boolean.class, new BooleanArraySerializer());
-        ARRAY_SERIALIZERS.put(byte.class, new ByteArraySerializer());
-        ARRAY_SERIALIZERS.put(char.class, new CharArraySerializer());
-        ARRAY_SERIALIZERS.put(short.class, new ShortArraySerializer());
-        ARRAY_SERIALIZERS.put(int.class, new IntArraySerializer());
-        ARRAY_SERIALIZERS.put(long.class, new LongArraySerializer());
-        ARRAY_SERIALIZERS.put(float.class, new FloatArraySerializer());
-        ARRAY_SERIALIZERS.put(double.class, new DoubleArraySerializer());
-        ARRAY_SERIALIZERS.put(Enum.class, new EnumArraySerializer());
-        ARRAY_SERIALIZERS.put(String.class, new StringArraySerializer());
+    public static <T> T deserializeNext(final ByteBuffer data, final Class<T> type, @Nullable final T into, final Options options) throws SerializationException {
+        return deserializeFrom(data, type, into, options, true);
     }
 
-    private static final class Serializer implements SerializationVisitor {
-        private final DataOutputStream stream;
+    public static <T> T deserializeNext(final ByteBuffer data, final Class<T> type) throws SerializationException {
+        return deserializeNext(data, type, null);
+    }
 
-        private Serializer(final DataOutputStream stream) {
-            this.stream = stream;
+    /**
+     * Deserializes an object array from the specified buffer, starting at its current position, deserializing
+     * its elements only when they are first accessed.
+     * <p>
+     * The data must have been written by serializing an array with a component type of {@code componentType}.
+     * Reading the array only reads the lengths of its elements. The elements are deserialized from the buffer
+     * when they are accessed, so the contents of the buffer must not be modified while the returned array is
+     * in use. The position of the buffer is not modified.
+     *
+     * @param data          the buffer to deserialize from.
+     * @param componentType the component type of the serialized array.
+     * @return a lazily deserialized view of the array, or {@code null} if a {@code null} array was serialized.
+     * @throws SerializationException if an exception is raised during deserialization.
+     */
+    public static <T> LazyArray<T> deserializeLazy(final ByteBuffer data, final Class<T> componentType) throws SerializationException {
+        return deserializeLazy(new BufferDeserializer(null).reset(data.duplicate().order(ByteOrder.BIG_ENDIAN)), componentType);
+    }
+
+    public static <T> LazyArray<T> deserializeLazy(final ByteBuffer data, final Class<T> componentType, final Options options) throws SerializationException {
+        return deserializeLazy(new BufferDeserializer(options).reset(data.duplicate().order(ByteOrder.BIG_ENDIAN)), componentType);
+    }
+
+    /**
+     * Skips over a value in the specified stream, without deserializing it.
+     * <p>
+     * Only the bytes belonging to the skipped value are read from the stream. Object array elements are skipped
+     * using their length prefixes, so their contents are never decoded.
+     *
+     * @param stream the stream to skip a value in.
+     * @param type   the type of the value to skip.
+     * @throws SerializationException if an exception is raised while skipping.
+     */
+    public static <T> void skip(final DataInputStream stream, final Class<T> type) throws SerializationException {
+        skip(new StreamDeserializer(null).reset(stream), type);
+    }
+
+    public static <T> void skip(final DataInputStream stream, final Class<T> type, final Options options) throws SerializationException {
+        skip(new StreamDeserializer(options).reset(stream), type);
+    }
+
+    /**
+     * Advances the position of the specified buffer past a value, without deserializing it.
+     *
+     * @param data the buffer to skip a value in.
+     * @param type the type of the value to skip.
+     * @throws SerializationException if an exception is raised while skipping.
+     * @see #skip(DataInputStream, Class)
+     */
+    public static <T> void skipNext(final ByteBuffer data, final Class<T> type) throws SerializationException {
+        skipNext(data, type, null);
+    }
+
+    public static <T> void skipNext(final ByteBuffer data, final Class<T> type, @Nullable final Options options) throws SerializationException {
+        final BufferDeserializer deserializer = new BufferDeserializer(options).reset(data.duplicate().order(ByteOrder.BIG_ENDIAN));
+        skip(deserializer, type);
+        data.position(deserializer.buffer.position());
+    }
+
+    /**
+     * Serializes a value into the specified file by mapping it into memory.
+     * <p>
+     * The data is written to a temporary file next to the specified file first, which then replaces the specified
+     * file. If serialization fails, the specified file is left untouched. Data is buffered in chunks, each of which
+     * is written by mapping exactly its region of the file, so values larger than the maximum size of a buffer are
+     * supported, and the serialized data is never held on the heap as a whole.
+     *
+     * @param file  the file to serialize into.
+     * @param value the value to serialize.
+     * @param type  the type of the value to serialize.
+     * @throws SerializationException if an exception is raised during serialization or writing the file.
+     */
+    public static <T> void serialize(final Path file, final T value, final Class<T> type) throws SerializationException {
+        serializeInto(file, value, type, null);
+    }
+
+    public static <T> void serialize(final Path file, final T value, final Class<T> type, final Options options) throws SerializationException {
+        serializeInto(file, value, type, options);
+    }
+
+    /**
+     * Deserializes a value from the specified file by mapping it into memory read-only.
+     * <p>
+     * Files larger than the maximum size of a buffer are mapped in chunks as they are read.
+     *
+     * @param file the file to deserialize from.
+     * @param type the type of the value to deserialize.
+     * @param into the existing value to deserialize into, if any.
+     * @return the deserialized value.
+     * @throws SerializationException if an exception is raised during deserialization or reading the file.
+     */
+    public static <T> T deserialize(final Path file, final Class<T> type, @Nullable final T into) throws SerializationException {
+        return deserializeFrom(file, type, into, null);
+    }
+
+    public static <T> T deserialize(final Path file, final Class<T> type, @Nullable final T into, final Options options) throws SerializationException {
+        return deserializeFrom(file, type, into, options);
+    }
+
+    /**
+     * Computes the exact number of bytes serializing the specified value produces, without serializing it.
+     * <p>
+     * The value is deconstructed by its serializer as usual, but the resulting data is only counted.
+     *
+     * @param value the value to compute the serialized size of.
+     * @param type  the type of the value.
+     * @return the number of bytes serializing the value produces.
+     * @throws SerializationException if the value cannot be serialized.
+     */
+    public static <T> long sizeOf(final T value, final Class<T> type) throws SerializationException {
+        return sizeOf(new SizeCounter(null), value, type);
+    }
+
+    /**
+     * Computes the exact number of bytes serializing the specified value with the specified options produces,
+     * including the header, without serializing it.
+     *
+     * @param value   the value to compute the serialized size of.
+     * @param type    the type of the value.
+     * @param options the options specifying the format to use.
+     * @return the number of bytes serializing the value produces.
+     * @throws SerializationException if the value cannot be serialized.
+     */
+    public static <T> long sizeOf(final T value, final Class<T> type, final Options options) throws SerializationException {
+        if (options.isCompressed()) {
+            // The size of compressed data is only known after compressing it, so do that, but discard the result.
+            final StreamSerializer serializer = new StreamSerializer(options).reset(new DataOutputStream(OutputStream.nullOutputStream()));
+            serialize(serializer, value, type);
+            return serializer.position();
         }
 
-        @Override
-        public void putBoolean(final String name, final boolean value) throws SerializationException {
-            try {
-                stream.writeBoolean(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
-            }
+        final long size = sizeOf(new SizeCounter(options), value, type);
+        if (options.hasChecksums()) {
+            final long dataSize = size - HEADER_SIZE;
+            final long blockCount = (dataSize + options.blockSize - 1) / options.blockSize;
+            return size + blockCount * (BLOCK_HEADER_SIZE + BLOCK_CHECKSUM_SIZE) + Integer.BYTES;
         }
+        return size;
+    }
 
-        @Override
-        public void putByte(final String name, final byte value) throws SerializationException {
-            try {
-                stream.writeByte(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+    private static <T> long sizeOf(final SizeCounter counter, final T value, final Class<T> type) {
+        Ceres.getSerializer(type).serialize(counter, type, value);
+        return counter.size;
+    }
+
+    private static <T> void serializeInto(final Path file, final T value, final Class<T> type, @Nullable final Options options) {
+        final Path tempFile = file.resolveSibling("." + file.getFileName() + ".tmp");
+        try {
+            try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                serialize(new MappedSerializer(channel, options), value, type);
             }
-        }
 
-        @Override
-        public void putChar(final String name, final char value) throws SerializationException {
             try {
-                stream.writeChar(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
             }
-        }
-
-        @Override
-        public void putShort(final String name, final short value) throws SerializationException {
+        } catch (final IOException | RuntimeException e) {
             try {
-                stream.writeShort(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                Files.deleteIfExists(tempFile);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
             }
+            throw e instanceof final SerializationException serializationException ? serializationException : new SerializationException(e);
         }
+    }
 
-        @Override
-        public void putInt(final String name, final int value) throws SerializationException {
-            try {
-                stream.writeInt(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
-            }
+    private static <T> T deserializeFrom(final Path file, final Class<T> type, @Nullable final T into, @Nullable final Options options) {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return deserialize(new MappedDeserializer(channel, options), type, into);
+        } catch (final IOException e) {
+            throw new SerializationException(e);
         }
+    }
 
-        @Override
-        public void putLong(final String name, final long value) throws SerializationException {
-            try {
-                stream.writeLong(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+    private static <T> ByteBuffer serializeInto(final ByteBuffer buffer, final T value, final Class<T> type, @Nullable final Options options) {
+        final BufferSerializer serializer = new BufferSerializer(Integer.MAX_VALUE, options).reset(buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+        serialize(serializer, value, type);
+        if (serializer.isGrown) {
+            return serializer.buffer;
+        } else {
+            buffer.position(serializer.buffer.position());
+            return buffer;
+        }
+    }
+
+    private static <T> void serialize(final BufferSerializer serializer, final T value, final Class<T> type) {
+        serializer.writeHeader();
+        final BufferSerializer visitor = serializer.isBlocked() ? serializer.blocks() : serializer;
+        Ceres.getSerializer(type).serialize(visitor, type, value);
+        visitor.flush();
+    }
+
+    private static <T> T deserializeFrom(final ByteBuffer data, final Class<T> type, @Nullable final T into, @Nullable final Options options, final boolean advance) {
+        return deserializeFrom(new BufferDeserializer(options), data, type, into, advance);
+    }
+
+    private static <T> T deserializeFrom(final BufferDeserializer deserializer, final ByteBuffer data, final Class<T> type, @Nullable final T into, final boolean advance) {
+        deserializer.reset(data.duplicate().order(ByteOrder.BIG_ENDIAN));
+        final T value = deserialize(deserializer, type, into);
+        if (advance) {
+            data.position(deserializer.buffer.position());
+        }
+        return value;
+    }
+
+    private static <T> T deserialize(final BufferDeserializer deserializer, final Class<T> type, @Nullable final T into) throws SerializationException {
+        try {
+            deserializer.readHeader();
+            BufferDeserializer visitor = deserializer;
+            if (deserializer.isBlocked) {
+                visitor = deserializer.isRandomAccess() ? decodeBlocks(deserializer, 2) : null;
+                if (visitor == null) {
+                    visitor = deserializer.blocks();
+                }
             }
+            final T value = Ceres.getSerializer(type).deserialize(visitor, type, into);
+            visitor.finish();
+            return value;
+        } catch (final BufferUnderflowException e) {
+            throw new SerializationException(e);
         }
+    }
 
-        @Override
-        public void putFloat(final String name, final float value) throws SerializationException {
-            try {
-                stream.writeFloat(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+    private static <T> LazyArray<T> deserializeLazy(final BufferDeserializer deserializer, final Class<T> componentType) throws SerializationException {
+        try {
+            deserializer.readHeader();
+            BufferDeserializer visitor = deserializer;
+            if (deserializer.isBlocked) {
+                // Elements are read from slices of the data, so all blocks have to be decoded up front.
+                visitor = decodeBlocks(deserializer, 0);
+                if (visitor == null) {
+                    throw new SerializationException("Data is too large to be deserialized lazily.");
+                }
             }
+            return visitor.getLazyArray(componentType);
+        } catch (final BufferUnderflowException e) {
+            throw new SerializationException(e);
         }
+    }
 
-        @Override
-        public void putDouble(final String name, final double value) throws SerializationException {
-            try {
-                stream.writeDouble(value);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+    private static <T> void skip(final BufferDeserializer deserializer, final Class<T> type) throws SerializationException {
+        try {
+            deserializer.readHeader();
+            if (deserializer.isBlocked) {
+                // Blocks are prefixed with their size, so the whole value can be skipped without decoding it.
+                deserializer.blocks().finish();
+            } else {
+                Ceres.getSerializer(type).skip(deserializer, type);
             }
+        } catch (final BufferUnderflowException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    /**
+     * Decodes all blocks of a value in parallel, if the data can be read randomly.
+     * <p>
+     * The block headers are read first, skipping over the block data, to find the locations of all blocks. This
+     * leaves the deserializer positioned after the value. If there are fewer blocks than requested, or the decoded
+     * value would not fit into a single buffer, the deserializer is moved back to the first block and {@code null}
+     * is returned.
+     *
+     * @param deserializer  the deserializer positioned at the first block of a value.
+     * @param minBlockCount the minimum number of blocks for which to decode the blocks.
+     * @return a deserializer for the decoded value, or {@code null}.
+     */
+    @Nullable
+    private static BufferDeserializer decodeBlocks(final BufferDeserializer deserializer, final int minBlockCount) {
+        final long start = deserializer.position();
+        final ArrayList<Block> blocks = new ArrayList<>();
+        long size = 0;
+        for (Block block = deserializer.readBlock(size); block != null; block = deserializer.readBlock(size)) {
+            deserializer.skipTo(block.position + block.storedSize);
+            blocks.add(block);
+            size += block.size;
         }
 
-        @SuppressWarnings({"unchecked", "rawtypes"})
-        @Override
-        public void putObject(final String name, final Class<?> type, @Nullable final Object value) throws SerializationException {
-            if (putIsNull(value)) {
-                return;
+        if (blocks.size() < minBlockCount || size > Integer.MAX_VALUE) {
+            deserializer.seek(start);
+            return null;
+        }
+
+        final ByteBuffer data = ByteBuffer.allocate((int) size);
+        blocks.parallelStream().forEach(block -> {
+            final ByteBuffer blockData = deserializer.slice(block.position, block.storedSize);
+            block.verify(blockData);
+            decodeBlock(blockData, data.slice((int) block.offset, block.size));
+        });
+
+        final BufferDeserializer visitor = new BufferDeserializer(deserializer.options).reset(data);
+        visitor.copyFormat(deserializer);
+        return visitor;
+    }
+
+    private static boolean encodeBlock(final ByteBuffer data, final ByteBuffer output) {
+        final Deflater deflater = acquireDeflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished() && output.hasRemaining()) {
+                deflater.deflate(output);
             }
+            return deflater.finished();
+        } finally {
+            releaseDeflater(deflater);
+        }
+    }
 
-            if (type.isArray()) {
-                putArray(stream, name, type, value);
-            } else if (type.isEnum()) {
-                putInt(name, ((Enum) value).ordinal());
-            } else if (type == String.class) {
-                final String data = (String) value;
-                try {
-                    stream.writeUTF(data);
-                } catch (final IOException e) {
-                    throw new SerializationException(e);
+    private static void decodeBlock(final ByteBuffer data, final ByteBuffer output) {
+        if (data.remaining() == output.remaining()) {
+            output.put(data);
+            return;
+        }
+
+        final Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(data);
+            while (!inflater.finished()) {
+                if (!output.hasRemaining() || inflater.inflate(output) == 0 && !inflater.finished()) {
+                    throw new SerializationException("Corrupted data block.");
                 }
-            } else {
-                Ceres.getSerializer(type).serialize(this, (Class) type, value);
             }
+            if (output.hasRemaining()) {
+                throw new SerializationException("Corrupted data block.");
+            }
+        } catch (final DataFormatException e) {
+            throw new SerializationException("Corrupted data block.", e);
+        } finally {
+            releaseInflater(inflater);
         }
+    }
 
-        @Contract("null -> true")
-        private boolean putIsNull(@Nullable final Object value) {
-            try {
-                final boolean isNull = value == null;
-                stream.writeBoolean(isNull);
-                return isNull;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
-            }
+    private static Deflater acquireDeflater() {
+        final Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater();
+    }
+
+    private static void releaseDeflater(final Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
         }
+    }
+
+    private static Inflater acquireInflater() {
+        final Inflater inflater = INFLATERS.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
 
-        @FunctionalInterface
-        private interface ArrayComponentSerializer {
-            void serialize(DataOutputStream stream, Class<?> type, Object value);
+    private static void releaseInflater(final Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
         }
+    }
 
-        @SuppressWarnings({"unchecked", "rawtypes"})
-        private static void putArray(final DataOutputStream stream, final String name, final Class<?> type, final Object value) {
-            final Class<?> componentType = type.getComponentType();
+    /**
+     * Options for the binary format written by this class.
+     * <p>
+     * Data written using options is preceded by a small header recording the format it was written in, so that
+     * readers can detect it. Options are immutable, use the {@code with...} methods to derive new options.
+     */
+    public static final class Options {
+        /**
+         * The default options. Data is written in the same format as when not using options, except for strings.
+         * <p>
+         * With options, strings are written as Latin-1 or UTF-8, whichever fits, prefixed with a variable length
+         * integer holding their encoded length. Unlike the modified UTF-8 encoding used otherwise, this has no
+         * limit on the length of strings.
+         */
+        public static final Options DEFAULT = new Options(FLAG_STRING_CODEC, DEFAULT_BLOCK_SIZE, 0);
+
+        private final int flags;
+        private final int blockSize;
+        private final int parallelThreshold;
+
+        private Options(final int flags, final int blockSize, final int parallelThreshold) {
+            this.flags = flags;
+            this.blockSize = blockSize;
+            this.parallelThreshold = parallelThreshold;
+        }
 
-            final ArraySerializer arraySerializer = ARRAY_SERIALIZERS.get(componentType);
-            if (arraySerializer != null) {
-                arraySerializer.serialize(stream, value);
-            } else {
-                final ArrayComponentSerializer componentSerializer;
-                if (componentType.isArray()) {
-                    componentSerializer = (s, t, v) -> putArray(s, name, t, v);
-                } else {
-                    final li.cil.ceres.api.Serializer<?> serializer = Ceres.getSerializer(componentType);
-                    componentSerializer = (s, t, v) -> serializer.serialize(new Serializer(s), (Class) t, v);
-                }
+        /**
+         * Whether to use the compact number encoding.
+         * <p>
+         * When enabled, {@code int} and {@code long} values are written as variable length integers using zigzag
+         * encoding, and array lengths, enum ordinals and the lengths of object array elements are written as
+         * unsigned variable length integers. This significantly reduces the size of data mostly consisting of
+         * small numbers, at the cost of some encoding overhead.
+         *
+         * @return {@code true} if the compact number encoding is used; {@code false} otherwise.
+         */
+        public boolean isCompactNumbers() {
+            return (flags & FLAG_COMPACT_NUMBERS) != 0;
+        }
 
-                final ByteArrayOutputStream componentData = new ByteArrayOutputStream();
-                final DataOutputStream componentStream = new DataOutputStream(componentData);
-                final Object[] data = (Object[]) value;
-                try {
-                    stream.writeInt(data.length);
-                    for (final Object datum : data) {
-                        if (datum == null) {
-                            stream.writeInt(OBJECT_ARRAY_NULL_VALUE);
-                            continue;
-                        }
-                        if (datum.getClass() != componentType) {
-                            throw new SerializationException(String.format("Polymorphism detected in array [%s]. This is not supported.", name));
-                        }
-                        componentSerializer.serialize(componentStream, componentType, datum);
-                        stream.writeInt(componentData.size());
-                        stream.write(componentData.toByteArray());
-                        componentData.reset();
-                    }
-                } catch (final IOException e) {
-                    throw new SerializationException(e);
-                }
+        public Options withCompactNumbers(final boolean value) {
+            return withFlag(FLAG_COMPACT_NUMBERS, value);
+        }
+
+        /**
+         * Whether to use the compact enum encoding.
+         * <p>
+         * When enabled, enum ordinals are stored using a fixed size depending on the number of constants of the
+         * enum: a single byte for enums with up to 256 constants, two bytes for enums with up to 65536 constants.
+         * Enum arrays store their elements the same way, offset by one to mark {@code null} elements, so enums with
+         * up to 255 constants use a single byte per element.
+         *
+         * @return {@code true} if the compact enum encoding is used; {@code false} otherwise.
+         */
+        public boolean isCompactEnums() {
+            return (flags & FLAG_COMPACT_ENUMS) != 0;
+        }
+
+        public Options withCompactEnums(final boolean value) {
+            return withFlag(FLAG_COMPACT_ENUMS, value);
+        }
+
+        /**
+         * Whether to compress the serialized data.
+         * <p>
+         * When enabled, the serialized data is split into blocks of {@link #getBlockSize()} bytes, which are
+         * compressed independently using a {@link Deflater} while serializing, so the uncompressed data is never
+         * held in memory as a whole. Each block is preceded by its compressed and uncompressed size. When reading
+         * from a buffer or file, these are used to locate all blocks first, which are then decompressed in parallel.
+         *
+         * @return {@code true} if the serialized data is compressed; {@code false} otherwise.
+         */
+        public boolean isCompressed() {
+            return (flags & FLAG_COMPRESSED) != 0;
+        }
+
+        public Options withCompression(final boolean value) {
+            return withFlag(FLAG_COMPRESSED, value);
+        }
+
+        /**
+         * Whether to protect the serialized data with checksums.
+         * <p>
+         * When enabled, the serialized data is split into blocks of {@link #getBlockSize()} bytes, as when
+         * compressing it, and a {@link CRC32C} checksum of the stored data of each block is written with it.
+         * Readers verify each block before decoding it, so corrupted or truncated data is reported as such,
+         * instead of failing somewhere in a serializer or producing garbage.
+         *
+         * @return {@code true} if the serialized data contains checksums; {@code false} otherwise.
+         */
+        public boolean hasChecksums() {
+            return (flags & FLAG_CHECKSUMS) != 0;
+        }
+
+        public Options withChecksums(final boolean value) {
+            return withFlag(FLAG_CHECKSUMS, value);
+        }
+
+        /**
+         * Whether to pack boolean values into bits.
+         * <p>
+         * When enabled, {@code boolean[]} arrays are written using one bit per element. Further, the flags marking
+         * which object values are {@code null} are stored as a bit mask preceding the fields of an object, when
+         * its serializer announces them via {@link SerializationVisitor#putNullMask(long, int)}, as generated
+         * serializers do. Otherwise, each of these flags takes up a byte.
+         *
+         * @return {@code true} if boolean values are packed into bits; {@code false} otherwise.
+         */
+        public boolean isBitPacking() {
+            return (flags & FLAG_BIT_PACKING) != 0;
+        }
+
+        public Options withBitPacking(final boolean value) {
+            return withFlag(FLAG_BIT_PACKING, value);
+        }
+
+        /**
+         * Whether to write the fields inherited from superclasses without a preceding flag.
+         * <p>
+         * Without options, the fields a value inherits from its superclass are written like a nested value, i.e.
+         * preceded by a flag marking it as not {@code null}, which repeats for each level of the class hierarchy.
+         * When enabled, these flags are omitted, via {@link SerializationVisitor#putSuperclass(String, Class, Object)}.
+         *
+         * @return {@code true} if inherited fields are written without a preceding flag; {@code false} otherwise.
+         */
+        public boolean isFlatHierarchies() {
+            return (flags & FLAG_FLAT_HIERARCHIES) != 0;
+        }
+
+        public Options withFlatHierarchies(final boolean value) {
+            return withFlag(FLAG_FLAT_HIERARCHIES, value);
+        }
+
+        /**
+         * The number of bytes of serialized data per block, if the data is split into blocks.
+         * <p>
+         * Larger blocks compress better, smaller blocks decompress with more parallelism. Only used when writing,
+         * readers take the size of each block from the data.
+         *
+         * @return the size of a block.
+         */
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public Options withBlockSize(final int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Block size must be positive.");
+            }
+            return new Options(flags, value, parallelThreshold);
+        }
+
+        /**
+         * The minimum length of object arrays to serialize and deserialize in parallel, or zero if disabled.
+         * <p>
+         * Arrays at least this long are split into chunks of elements, which are serialized concurrently on the
+         * {@link ForkJoinPool#commonPool()} into separate buffers, and then written in order. This does not
+         * affect the format of the serialized data.
+         * <p>
+         * When deserializing from a buffer or file, the lengths of the elements of such arrays are read first, to
+         * find the location of each element. The elements are then deserialized concurrently, reading directly
+         * from the input. Arrays read from streams are always deserialized sequentially.
+         *
+         * @return the minimum length of arrays to serialize and deserialize in parallel.
+         */
+        public int getParallelThreshold() {
+            return parallelThreshold;
+        }
+
+        public Options withParallelThreshold(final int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Parallel threshold must not be negative.");
             }
+            return new Options(flags, blockSize, value);
+        }
+
+        private Options withFlag(final int flag, final boolean value) {
+            return new Options(value ? flags | flag : flags & ~flag, blockSize, parallelThreshold);
         }
     }
 
-    private static final class Deserializer implements DeserializationVisitor {
-        private final DataInputStream stream;
+    /**
+     * A reusable set of visitors and buffers for serializing and deserializing many values.
+     * <p>
+     * Buffers grown while using a session are kept for subsequent calls, so repeatedly serializing values of similar
+     * size does not allocate new buffers. Sessions are not thread-safe. Use one session per thread, e.g. by keeping
+     * it in a {@link ThreadLocal}, or draw sessions from a pool.
+     */
+    public static final class Session {
+        private final BufferSerializer serializer;
+        private final StreamSerializer streamSerializer;
+        private final BufferDeserializer deserializer;
+        private final StreamDeserializer streamDeserializer;
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private boolean isInUse;
+
+        private Session(@Nullable final Options options) {
+            serializer = new BufferSerializer(Integer.MAX_VALUE, options);
+            streamSerializer = new StreamSerializer(options);
+            deserializer = new BufferDeserializer(options);
+            streamDeserializer = new StreamDeserializer(options);
+        }
 
-        private Deserializer(final DataInputStream stream) {
-            this.stream = stream;
+        /**
+         * Creates a new session using the same format as the methods not accepting {@link Options}.
+         *
+         * @return the new session.
+         */
+        public static Session create() {
+            return new Session(null);
         }
 
-        @Override
-        public boolean getBoolean(final String name) throws SerializationException {
+        /**
+         * Creates a new session using the format described by the specified options.
+         *
+         * @param options the options specifying the format to use.
+         * @return the new session.
+         */
+        public static Session create(final Options options) {
+            return new Session(options);
+        }
+
+        /**
+         * Serializes a value into the buffer owned by this session.
+         * <p>
+         * The returned buffer holds the serialized data from its position to its limit. It shares its contents with
+         * the buffer of this session, so it is only valid until this session is used again.
+         *
+         * @param value the value to serialize.
+         * @param type  the type of the value to serialize.
+         * @return a view of the serialized data.
+         * @throws SerializationException if an exception is raised during serialization.
+         */
+        public <T> ByteBuffer serialize(final T value, final Class<T> type) throws SerializationException {
+            acquire();
             try {
-                return stream.readBoolean();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                BinarySerialization.serialize(serializer.reset(buffer.clear()), value, type);
+                buffer = serializer.buffer;
+                return buffer.duplicate().flip();
+            } finally {
+                release();
             }
         }
 
-        @Override
-        public byte getByte(final String name) throws SerializationException {
+        public <T> void serialize(final DataOutputStream stream, final T value, final Class<T> type) throws SerializationException {
+            acquire();
             try {
-                return stream.readByte();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                BinarySerialization.serialize(streamSerializer.reset(stream), value, type);
+            } finally {
+                release();
             }
         }
 
-        @Override
-        public char getChar(final String name) throws SerializationException {
+        public <T> T deserialize(final ByteBuffer data, final Class<T> type, @Nullable final T into) throws SerializationException {
+            acquire();
             try {
-                return stream.readChar();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                return deserializeFrom(deserializer, data, type, into, false);
+            } finally {
+                release();
             }
         }
 
-        @Override
-        public short getShort(final String name) throws SerializationException {
+        public <T> T deserializeNext(final ByteBuffer data, final Class<T> type, @Nullable final T into) throws SerializationException {
+            acquire();
             try {
-                return stream.readShort();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                return deserializeFrom(deserializer, data, type, into, true);
+            } finally {
+                release();
             }
         }
 
-        @Override
-        public int getInt(final String name) throws SerializationException {
+        public <T> T deserialize(final DataInputStream stream, final Class<T> type, @Nullable final T into) throws SerializationException {
+            acquire();
             try {
-                return stream.readInt();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                return BinarySerialization.deserialize(streamDeserializer.reset(stream), type, into);
+            } finally {
+                release();
             }
         }
 
-        @Override
-        public long getLong(final String name) throws SerializationException {
-            try {
-                return stream.readLong();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        /**
+         * Releases buffers that have grown beyond their initial size while using this session.
+         * <p>
+         * Useful after serializing an unusually large value, to avoid keeping a large buffer alive.
+         */
+        public void reset() {
+            if (buffer.capacity() > INITIAL_BUFFER_SIZE) {
+                buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
             }
+            serializer.trim();
+            streamSerializer.trim();
+            deserializer.trim();
+            streamDeserializer.trim();
         }
 
-        @Override
-        public float getFloat(final String name) throws SerializationException {
-            try {
-                return stream.readFloat();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        private void acquire() {
+            if (isInUse) {
+                throw new SerializationException("Session is already in use.");
             }
+            isInUse = true;
         }
 
+        private void release() {
+            isInUse = false;
+            // Do not keep references to the last used streams and data alive.
+            streamSerializer.reset((DataOutputStream) null);
+            streamDeserializer.reset((DataInputStream) null);
+            deserializer.reset(EMPTY_BUFFER);
+        }
+    }
+
+    private static final int OBJECT_ARRAY_NULL_VALUE = -1;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private static final byte HEADER_MAGIC = (byte) 0xCE;
+    private static final int HEADER_SIZE = 2;
+    private static final int FLAG_COMPACT_NUMBERS = 1;
+    private static final int FLAG_STRING_CODEC = 1 << 1;
+    private static final int FLAG_COMPRESSED = 1 << 2;
+    private static final int FLAG_CHECKSUMS = 1 << 3;
+    private static final int FLAG_BIT_PACKING = 1 << 4;
+    private static final int FLAG_COMPACT_ENUMS = 1 << 5;
+    private static final int FLAG_FLAT_HIERARCHIES = 1 << 6;
+    private static final int SUPPORTED_FLAGS = FLAG_COMPACT_NUMBERS | FLAG_STRING_CODEC | FLAG_COMPRESSED | FLAG_CHECKSUMS | FLAG_BIT_PACKING | FLAG_COMPACT_ENUMS | FLAG_FLAT_HIERARCHIES;
+    private static final int BLOCK_FLAGS = FLAG_COMPRESSED | FLAG_CHECKSUMS;
+    private static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int BLOCK_CHECKSUM_SIZE = Integer.BYTES;
+    private static final int PARALLEL_CHUNKS_PER_THREAD = 4;
+    private static final int CODEC_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(CODEC_POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(CODEC_POOL_SIZE);
+    private static final Map<Class<?>, ArraySerializer> ARRAY_SERIALIZERS;
+    private static final ArraySerializer ENUM_ARRAY_SERIALIZER = new EnumArraySerializer();
+    private static final ClassValue<Object[]> ENUM_CONSTANTS = new ClassValue<>() {
         @Override
-        public double getDouble(final String name) throws SerializationException {
+        protected Object[] computeValue(final Class<?> type) {
+            // getEnumConstants() returns a copy on each call, so keep one around per type.
+            return type.getEnumConstants();
+        }
+    };
+
+    static {
+        ARRAY_SERIALIZERS = new HashMap<>();
+        ARRAY_SERIALIZERS.put(boolean.class, new BooleanArraySerializer());
+        ARRAY_SERIALIZERS.put(byte.class, new ByteArraySerializer());
+        ARRAY_SERIALIZERS.put(char.class, new CharArraySerializer());
+        ARRAY_SERIALIZERS.put(short.class, new ShortArraySerializer());
+        ARRAY_SERIALIZERS.put(int.class, new IntArraySerializer());
+        ARRAY_SERIALIZERS.put(long.class, new LongArraySerializer());
+        ARRAY_SERIALIZERS.put(float.class, new FloatArraySerializer());
+        ARRAY_SERIALIZERS.put(double.class, new DoubleArraySerializer());
+        ARRAY_SERIALIZERS.put(String.class, new StringArraySerializer());
+    }
+
+    @Nullable
+    private static ArraySerializer getArraySerializer(final Class<?> componentType) {
+        // Enum arrays have their concrete enum as component type, so they cannot be looked up by type.
+        return componentType.isEnum() ? ENUM_ARRAY_SERIALIZER : ARRAY_SERIALIZERS.get(componentType);
+    }
+
+    private static Object[] getEnumConstants(final Class<?> type) {
+        return ENUM_CONSTANTS.get(type);
+    }
+
+    private static Object getEnumConstant(final Class<?> type, final Object[] constants, final int ordinal) {
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new SerializationException(String.format("Invalid ordinal [%d] for enum [%s].", ordinal, type.getName()));
+        }
+        return constants[ordinal];
+    }
+
+    /**
+     * The number of bytes used to store an ordinal with the compact enum encoding, or zero if it is stored as a
+     * regular length.
+     *
+     * @param bound the exclusive upper bound of the ordinals to store.
+     */
+    private static int getOrdinalSize(final int bound) {
+        if (bound <= 1 << Byte.SIZE) {
+            return Byte.BYTES;
+        } else if (bound <= 1 << Short.SIZE) {
+            return Short.BYTES;
+        } else {
+            return 0;
+        }
+    }
+
+    private static int getParallelChunkLength(final int length) {
+        final int chunkCount = ForkJoinPool.getCommonPoolParallelism() * PARALLEL_CHUNKS_PER_THREAD;
+        return Math.max(1, (int) (((long) length + chunkCount - 1) / chunkCount));
+    }
+
+    private static int getNullMaskSize(final int count) {
+        if (count < 0 || count > Long.SIZE) {
+            throw new SerializationException(String.format("Null masks must cover between zero and 64 values, got [%d].", count));
+        }
+        return (count + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    private static int getVarIntSize(final int value) {
+        return Math.max(1, (38 - Integer.numberOfLeadingZeros(value)) / 7);
+    }
+
+    private static int getVarLongSize(final long value) {
+        return Math.max(1, (70 - Long.numberOfLeadingZeros(value)) / 7);
+    }
+
+    private static boolean isLatin1(final String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same as String.getBytes(StandardCharsets.UTF_8), which replaces unpaired surrogates with a single '?'.
+    private static long getUtf8Length(final String value) {
+        final int length = value.length();
+        long encodedLength = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                encodedLength += 1;
+            } else if (c < 0x800) {
+                encodedLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                encodedLength += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                encodedLength += 1;
+            } else {
+                encodedLength += 3;
+            }
+        }
+        return encodedLength;
+    }
+
+    private static int getModifiedUtf8Length(final String value) {
+        final int length = value.length();
+        int encodedLength = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x800) {
+                encodedLength += 2;
+            } else if (c >= 0x80 || c == 0) {
+                encodedLength += 1;
+            }
+        }
+
+        if (encodedLength > 0xFFFF) {
+            throw new SerializationException(String.format("Encoded string too long: %d bytes", encodedLength));
+        }
+        return encodedLength;
+    }
+
+    /**
+     * Counts the number of bytes the {@link BufferSerializer} would write, without writing anything.
+     */
+    private static final class SizeCounter implements SerializationVisitor {
+        final boolean isCompact;
+        final boolean hasStringCodec;
+        final boolean isBitPacking;
+        final boolean isCompactEnums;
+        final boolean isFlatHierarchies;
+        long size;
+        private int nullMaskCount;
+
+        private SizeCounter(@Nullable final Options options) {
+            isCompact = options != null && options.isCompactNumbers();
+            hasStringCodec = options != null && (options.flags & FLAG_STRING_CODEC) != 0;
+            isBitPacking = options != null && options.isBitPacking();
+            isCompactEnums = options != null && options.isCompactEnums();
+            isFlatHierarchies = options != null && options.isFlatHierarchies();
+            if (options != null) {
+                size = HEADER_SIZE;
+            }
+        }
+
+        @Override
+        public void putBoolean(final String name, final boolean value) throws SerializationException {
+            size += 1;
+        }
+
+        @Override
+        public void putByte(final String name, final byte value) throws SerializationException {
+            size += Byte.BYTES;
+        }
+
+        @Override
+        public void putChar(final String name, final char value) throws SerializationException {
+            size += Character.BYTES;
+        }
+
+        @Override
+        public void putShort(final String name, final short value) throws SerializationException {
+            size += Short.BYTES;
+        }
+
+        @Override
+        public void putInt(final String name, final int value) throws SerializationException {
+            countIntValue(value);
+        }
+
+        @Override
+        public void putLong(final String name, final long value) throws SerializationException {
+            countLongValue(value);
+        }
+
+        @Override
+        public void putFloat(final String name, final float value) throws SerializationException {
+            size += Float.BYTES;
+        }
+
+        @Override
+        public void putDouble(final String name, final double value) throws SerializationException {
+            size += Double.BYTES;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        public void putObject(final String name, final Class<?> type, @Nullable final Object value) throws SerializationException {
+            countIsNull();
+            if (value == null) {
+                return;
+            }
+
+            if (type.isArray()) {
+                countArray(name, type, value);
+            } else if (type.isEnum()) {
+                countOrdinal(((Enum) value).ordinal(), getEnumConstants(type).length);
+            } else if (type == String.class) {
+                countString((String) value);
+            } else {
+                countFields(Ceres.getSerializer(type), type, value);
+            }
+        }
+
+        @Override
+        public void putObject(final String name, final Class<?> type, @Nullable final Object value, final li.cil.ceres.api.Serializer<?> serializer) throws SerializationException {
+            if (type.isArray() || type.isEnum() || type == String.class) {
+                putObject(name, type, value);
+                return;
+            }
+
+            countIsNull();
+            if (value != null) {
+                countFields(serializer, type, value);
+            }
+        }
+
+        @Override
+        public void putSuperclass(final String name, final Class<?> type, final Object value) throws SerializationException {
+            if (isFlatHierarchies) {
+                countFields(Ceres.getSerializer(type), type, value);
+            } else {
+                putObject(name, type, value);
+            }
+        }
+
+        @Override
+        public void putNullMask(final long mask, final int count) throws SerializationException {
+            final int maskSize = getNullMaskSize(count);
+            if (isBitPacking) {
+                size += maskSize;
+                nullMaskCount = count;
+            }
+        }
+
+        private void countIsNull() {
+            if (nullMaskCount > 0) {
+                nullMaskCount--;
+            } else {
+                size += 1;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void countFields(final li.cil.ceres.api.Serializer serializer, final Class<?> type, final Object value) {
+            final int parentNullMaskCount = nullMaskCount;
+            nullMaskCount = 0;
+            serializer.serialize(this, type, value);
+            nullMaskCount = parentNullMaskCount;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void countArray(final String name, final Class<?> type, final Object value) {
+            final Class<?> componentType = type.getComponentType();
+
+            final ArraySerializer arraySerializer = getArraySerializer(componentType);
+            if (arraySerializer != null) {
+                arraySerializer.count(this, type, value);
+                return;
+            }
+
+            final li.cil.ceres.api.Serializer serializer = componentType.isArray() ? null : Ceres.getSerializer(componentType);
+            final Object[] data = (Object[]) value;
+            countLength(data.length);
+            for (final Object datum : data) {
+                if (datum == null) {
+                    size += isCompact ? 1 : Integer.BYTES;
+                    continue;
+                }
+                if (datum.getClass() != componentType) {
+                    throw new SerializationException(String.format("Polymorphism detected in array [%s]. This is not supported.", name));
+                }
+
+                final long startSize = size;
+                if (serializer != null) {
+                    countFields(serializer, componentType, datum);
+                } else {
+                    countArray(name, componentType, datum);
+                }
+
+                final long length = size - startSize;
+                if (length > Integer.MAX_VALUE) {
+                    throw new SerializationException(String.format("Element in array [%s] is too large.", name));
+                }
+                size += isCompact ? getVarIntSize((int) length + 1) : Integer.BYTES;
+            }
+        }
+
+        void countIntValue(final int value) {
+            size += isCompact ? getVarIntSize((value << 1) ^ (value >> 31)) : Integer.BYTES;
+        }
+
+        void countLongValue(final long value) {
+            size += isCompact ? getVarLongSize((value << 1) ^ (value >> 63)) : Long.BYTES;
+        }
+
+        void countLength(final int value) {
+            size += isCompact ? getVarIntSize(value) : Integer.BYTES;
+        }
+
+        void countOrdinal(final int value, final int bound) {
+            final int ordinalSize = isCompactEnums ? getOrdinalSize(bound) : 0;
+            if (ordinalSize > 0) {
+                size += ordinalSize;
+            } else {
+                countLength(value);
+            }
+        }
+
+        void countString(final String value) {
+            if (hasStringCodec) {
+                final boolean isLatin1 = isLatin1(value);
+                final long encodedLength = isLatin1 ? value.length() : getUtf8Length(value);
+                size += getVarLongSize((encodedLength << 1) | (isLatin1 ? 1 : 0)) + encodedLength;
+            } else {
+                size += Short.BYTES + getModifiedUtf8Length(value);
+            }
+        }
+    }
+
+    /**
+     * Writes serialized data into a {@link ByteBuffer}.
+     * <p>
+     * Positions passed around while writing are absolute, i.e. they include data that has already been moved out
+     * of the buffer by subclasses. Data starting at the {@link #pinnedPosition} must remain in the buffer, since
+     * the length of an object array element stored there has not been filled in yet.
+     */
+    private static class BufferSerializer extends BinarySerializationVisitor {
+        ByteBuffer buffer;
+        boolean isGrown;
+        long offset;
+        long pinnedPosition = -1;
+        final boolean isCompact;
+        final boolean hasStringCodec;
+        final boolean isBitPacking;
+        final boolean isCompactEnums;
+        final boolean isFlatHierarchies;
+        @Nullable private final Options options;
+        private final int bulkSize;
+        @Nullable private BlockSerializer blocks;
+        private long nullMask;
+        private int nullMaskCount;
+
+        private BufferSerializer(final int bulkSize, @Nullable final Options options) {
+            this.bulkSize = bulkSize;
+            this.options = options;
+            this.isCompact = options != null && options.isCompactNumbers();
+            this.hasStringCodec = options != null && (options.flags & FLAG_STRING_CODEC) != 0;
+            this.isBitPacking = options != null && options.isBitPacking();
+            this.isCompactEnums = options != null && options.isCompactEnums();
+            this.isFlatHierarchies = options != null && options.isFlatHierarchies();
+        }
+
+        @Override
+        public void putBoolean(final String name, final boolean value) throws SerializationException {
+            writeBoolean(value);
+        }
+
+        @Override
+        public void putByte(final String name, final byte value) throws SerializationException {
+            writeByte(value);
+        }
+
+        @Override
+        public void putChar(final String name, final char value) throws SerializationException {
+            writeChar(value);
+        }
+
+        @Override
+        public void putShort(final String name, final short value) throws SerializationException {
+            writeShort(value);
+        }
+
+        @Override
+        public void putInt(final String name, final int value) throws SerializationException {
+            writeIntValue(value);
+        }
+
+        @Override
+        public void putLong(final String name, final long value) throws SerializationException {
+            writeLongValue(value);
+        }
+
+        @Override
+        public void putFloat(final String name, final float value) throws SerializationException {
+            writeFloat(value);
+        }
+
+        @Override
+        public void putDouble(final String name, final double value) throws SerializationException {
+            writeDouble(value);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        public void putObject(final String name, final Class<?> type, @Nullable final Object value) throws SerializationException {
+            if (putIsNull(value)) {
+                return;
+            }
+
+            if (type.isArray()) {
+                putArray(name, type, value);
+            } else if (type.isEnum()) {
+                writeOrdinal(((Enum) value).ordinal(), getEnumConstants(type).length);
+            } else if (type == String.class) {
+                writeString((String) value);
+            } else {
+                putFields(Ceres.getSerializer(type), type, value);
+            }
+        }
+
+        @Override
+        public void putObject(final String name, final Class<?> type, @Nullable final Object value, final li.cil.ceres.api.Serializer<?> serializer) throws SerializationException {
+            if (type.isArray() || type.isEnum() || type == String.class) {
+                putObject(name, type, value);
+            } else if (!putIsNull(value)) {
+                putFields(serializer, type, value);
+            }
+        }
+
+        @Override
+        public void putSuperclass(final String name, final Class<?> type, final Object value) throws SerializationException {
+            writeSuperclassMarker();
+            putFields(Ceres.getSerializer(type), type, value);
+        }
+
+        @Override
+        public void writeSuperclassMarker() {
+            if (!isFlatHierarchies) {
+                putIsNull(false);
+            }
+        }
+
+        @Override
+        public void putNullMask(final long mask, final int count) throws SerializationException {
+            final int maskSize = getNullMaskSize(count);
+            if (!isBitPacking) {
+                return;
+            }
+
+            for (int i = 0; i < maskSize; i++) {
+                writeByte((byte) (mask >>> (i * Byte.SIZE)));
+            }
+            nullMask = mask;
+            nullMaskCount = count;
+        }
+
+        @Contract("null -> true")
+        private boolean putIsNull(@Nullable final Object value) {
+            final boolean isNull = value == null;
+            putIsNull(isNull);
+            return isNull;
+        }
+
+        private void putIsNull(final boolean isNull) {
+            if (nullMaskCount > 0) {
+                if (((nullMask & 1) != 0) != isNull) {
+                    throw new SerializationException("Value does not match the null mask written for it.");
+                }
+                nullMask >>>= 1;
+                nullMaskCount--;
+            } else {
+                writeBoolean(isNull);
+            }
+        }
+
+        /**
+         * Serializes the fields of an object. A null mask only covers the values written by the serializer it
+         * was written by, so any pending mask is suspended while nested serializers run.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void putFields(final li.cil.ceres.api.Serializer serializer, final Class<?> type, final Object value) {
+            final long parentNullMask = nullMask;
+            final int parentNullMaskCount = nullMaskCount;
+            nullMaskCount = 0;
+            serializer.serialize(this, type, value);
+            nullMask = parentNullMask;
+            nullMaskCount = parentNullMaskCount;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void putArray(final String name, final Class<?> type, final Object value) {
+            final Class<?> componentType = type.getComponentType();
+
+            final ArraySerializer arraySerializer = getArraySerializer(componentType);
+            if (arraySerializer != null) {
+                arraySerializer.serialize(this, type, value);
+                return;
+            }
+
+            final li.cil.ceres.api.Serializer serializer = componentType.isArray() ? null : Ceres.getSerializer(componentType);
+            final Object[] data = (Object[]) value;
+            writeLength(data.length);
+            if (options != null && options.parallelThreshold > 0 && data.length >= options.parallelThreshold) {
+                putElementsInParallel(name, componentType, serializer, data);
+            } else {
+                putElements(name, componentType, serializer, data, 0, data.length);
+            }
+        }
+
+        /**
+         * Serializes chunks of the array's elements concurrently into separate buffers, and writes them in order.
+         */
+        @SuppressWarnings("rawtypes")
+        private void putElementsInParallel(final String name, final Class<?> componentType, @Nullable final li.cil.ceres.api.Serializer serializer, final Object[] data) {
+            final int chunkLength = getParallelChunkLength(data.length);
+            final ArrayList<ForkJoinTask<ByteBuffer>> chunks = new ArrayList<>();
+            try {
+                for (int start = 0; start < data.length; start += chunkLength) {
+                    final int from = start;
+                    final int to = Math.min(start + chunkLength, data.length);
+                    chunks.add(ForkJoinPool.commonPool().submit(() -> {
+                        final BufferSerializer chunk = new BufferSerializer(Integer.MAX_VALUE, options).reset(ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+                        chunk.putElements(name, componentType, serializer, data, from, to);
+                        return chunk.buffer.flip();
+                    }));
+                }
+
+                for (int i = 0; i < chunks.size(); i++) {
+                    writeBytes(chunks.get(i).join());
+                    chunks.set(i, null);
+                }
+            } finally {
+                for (final ForkJoinTask<ByteBuffer> chunk : chunks) {
+                    if (chunk != null) {
+                        chunk.cancel(false);
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void putElements(final String name, final Class<?> componentType, @Nullable final li.cil.ceres.api.Serializer serializer, final Object[] data, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                final Object datum = data[i];
+                if (datum == null) {
+                    writeElementLength(OBJECT_ARRAY_NULL_VALUE);
+                    continue;
+                }
+                if (datum.getClass() != componentType) {
+                    throw new SerializationException(String.format("Polymorphism detected in array [%s]. This is not supported.", name));
+                }
+
+                // Reserve space for the length of the serialized component and fill it in afterwards.
+                final long lengthPosition = position();
+                final int reservedSize = isCompact ? 1 : Integer.BYTES;
+                ensureRemaining(reservedSize);
+                buffer.position(buffer.position() + reservedSize);
+                final long startPosition = position();
+                final boolean isOutermost = pinnedPosition < 0;
+                if (isOutermost) {
+                    pinnedPosition = lengthPosition;
+                }
+
+                if (serializer != null) {
+                    putFields(serializer, componentType, datum);
+                } else {
+                    putArray(name, componentType, datum);
+                }
+
+                final long length = position() - startPosition;
+                if (length > Integer.MAX_VALUE) {
+                    throw new SerializationException(String.format("Element in array [%s] is too large.", name));
+                }
+                writeElementLength(lengthPosition, (int) length);
+                if (isOutermost) {
+                    pinnedPosition = -1;
+                }
+            }
+        }
+
+        BufferSerializer reset(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            isGrown = false;
+            offset = 0;
+            pinnedPosition = -1;
+            nullMaskCount = 0;
+            return this;
+        }
+
+        long position() {
+            return offset + buffer.position();
+        }
+
+        void writeHeader() {
+            if (options != null) {
+                writeByte(HEADER_MAGIC);
+                writeByte((byte) options.flags);
+            }
+        }
+
+        void flush() {
+        }
+
+        void trim() {
+            blocks = null;
+        }
+
+        boolean isBlocked() {
+            return options != null && (options.flags & BLOCK_FLAGS) != 0;
+        }
+
+        /**
+         * Returns the serializer splitting data into blocks before writing them to this serializer.
+         */
+        BufferSerializer blocks() {
+            if (blocks == null) {
+                assert options != null;
+                blocks = new BlockSerializer(this, options);
+            }
+            return blocks.reset(blocks.buffer.clear());
+        }
+
+        @Override
+        public void writeIntValue(final int value) {
+            if (isCompact) {
+                writeVarInt((value << 1) ^ (value >> 31));
+            } else {
+                writeInt(value);
+            }
+        }
+
+        @Override
+        public void writeLongValue(final long value) {
+            if (isCompact) {
+                writeVarLong((value << 1) ^ (value >> 63));
+            } else {
+                writeLong(value);
+            }
+        }
+
+        void writeLength(final int value) {
+            if (isCompact) {
+                writeVarInt(value);
+            } else {
+                writeInt(value);
+            }
+        }
+
+        void writeOrdinal(final int value, final int bound) {
+            final int ordinalSize = isCompactEnums ? getOrdinalSize(bound) : 0;
+            if (ordinalSize == Byte.BYTES) {
+                writeByte((byte) value);
+            } else if (ordinalSize == Short.BYTES) {
+                writeShort((short) value);
+            } else {
+                writeLength(value);
+            }
+        }
+
+        private void writeElementLength(final int length) {
+            if (isCompact) {
+                // Shifted by one, so the null marker becomes zero.
+                writeVarInt(length + 1);
+            } else {
+                writeInt(length);
+            }
+        }
+
+        private void writeElementLength(final long lengthPosition, final int length) {
+            if (!isCompact) {
+                buffer.putInt((int) (lengthPosition - offset), length);
+                return;
+            }
+
+            // Only a single byte was reserved, so move the element data if the length needs more than that.
+            final int value = length + 1;
+            final int extraSize = getVarIntSize(value) - 1;
+            if (extraSize > 0) {
+                ensureRemaining(extraSize);
+                moveForward((int) (lengthPosition - offset) + 1, extraSize);
+            }
+
+            int index = (int) (lengthPosition - offset);
+            int remaining = value;
+            while ((remaining & ~0x7F) != 0) {
+                buffer.put(index++, (byte) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            buffer.put(index, (byte) remaining);
+        }
+
+        private void moveForward(final int from, final int distance) {
+            final int to = buffer.position();
+            if (buffer.hasArray()) {
+                final byte[] array = buffer.array();
+                System.arraycopy(array, buffer.arrayOffset() + from, array, buffer.arrayOffset() + from + distance, to - from);
+            } else {
+                // Copy back to front, so data is never overwritten before it was moved.
+                final byte[] chunk = new byte[Math.min(to - from, STREAM_BUFFER_SIZE)];
+                for (int end = to; end > from; ) {
+                    final int count = Math.min(chunk.length, end - from);
+                    buffer.get(end - count, chunk, 0, count);
+                    buffer.put(end - count + distance, chunk, 0, count);
+                    end -= count;
+                }
+            }
+            buffer.position(to + distance);
+        }
+
+        void writeVarInt(int value) {
+            ensureRemaining(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeVarLong(long value) {
+            ensureRemaining(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        @Override
+        public void writeBoolean(final boolean value) {
+            ensureRemaining(1);
+            buffer.put(value ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        public void writeByte(final byte value) {
+            ensureRemaining(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        @Override
+        public void writeChar(final char value) {
+            ensureRemaining(Character.BYTES);
+            buffer.putChar(value);
+        }
+
+        @Override
+        public void writeShort(final short value) {
+            ensureRemaining(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void writeInt(final int value) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(final long value) {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        @Override
+        public void writeFloat(final float value) {
+            // Same as DataOutputStream, which collapses NaNs to the canonical NaN value.
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        @Override
+        public void writeDouble(final double value) {
+            writeLong(Double.doubleToLongBits(value));
+        }
+
+        void writeString(final String value) {
+            if (!hasStringCodec) {
+                writeUTF(value);
+                return;
+            }
+
+            final boolean isLatin1 = isLatin1(value);
+
+            // The lowest bit of the length prefix indicates whether the string is Latin-1 or UTF-8.
+            final byte[] data = value.getBytes(isLatin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            writeVarLong(((long) data.length << 1) | (isLatin1 ? 1 : 0));
+            for (int offset = 0; offset < data.length; ) {
+                final int count = reserveElements(data.length - offset, Byte.BYTES);
+                buffer.put(data, offset, count);
+                offset += count;
+            }
+        }
+
+        // Same encoding as DataOutputStream.writeUTF, i.e. modified UTF-8 prefixed with a two-byte length.
+        private void writeUTF(final String value) {
+            final int length = value.length();
+            final int encodedLength = getModifiedUtf8Length(value);
+            ensureRemaining(Short.BYTES + encodedLength);
+            buffer.putShort((short) encodedLength);
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80 && c != 0) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else {
+                    buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        void writeBytes(final ByteBuffer data) {
+            while (data.hasRemaining()) {
+                final int count = reserveElements(data.remaining(), Byte.BYTES);
+                buffer.put(buffer.position(), data, data.position(), count);
+                buffer.position(buffer.position() + count);
+                data.position(data.position() + count);
+            }
+        }
+
+        /**
+         * Makes room for writing up to the specified number of elements of an array in bulk.
+         * <p>
+         * After writing the elements into the buffer, the position of the buffer must be advanced past them.
+         *
+         * @param count       the number of elements left to write.
+         * @param elementSize the size of a single element, in bytes.
+         * @return the number of elements that may be written into the buffer.
+         */
+        int reserveElements(final int count, final int elementSize) {
+            final long size = Math.min((long) count * elementSize, bulkSize);
+            if (size > Integer.MAX_VALUE) {
+                throw new SerializationException("Serialized data exceeds maximum buffer size.");
+            }
+            ensureRemaining((int) size);
+            return Math.min(count, buffer.remaining() / elementSize);
+        }
+
+        void ensureRemaining(final int count) {
+            if (buffer.remaining() < count) {
+                grow(count);
+            }
+        }
+
+        void grow(final int count) {
+            final long required = (long) buffer.position() + count;
+            if (required > Integer.MAX_VALUE) {
+                throw new SerializationException("Serialized data exceeds maximum buffer size.");
+            }
+
+            final int capacity = (int) Math.max(required, Math.min(buffer.capacity() * 2L, Integer.MAX_VALUE));
+            final ByteBuffer newBuffer = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            buffer.flip();
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+            isGrown = true;
+        }
+    }
+
+    /**
+     * Writes serialized data into a stream, using a buffer that is written to the stream whenever it fills up.
+     */
+    private static final class StreamSerializer extends BufferSerializer {
+        @Nullable private DataOutputStream stream;
+
+        private StreamSerializer(@Nullable final Options options) {
+            super(STREAM_BUFFER_SIZE, options);
+            buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        }
+
+        StreamSerializer reset(@Nullable final DataOutputStream stream) {
+            reset(buffer.clear());
+            this.stream = stream;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            if (buffer.capacity() > STREAM_BUFFER_SIZE) {
+                buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            }
+        }
+
+        @Override
+        void flush() {
+            write(buffer.position());
+        }
+
+        @Override
+        void grow(final int count) {
+            // Data after a pending array element length cannot be written yet, so grow the buffer instead.
+            write(pinnedPosition < 0 ? buffer.position() : (int) (pinnedPosition - offset));
+            if (buffer.remaining() < count) {
+                super.grow(count);
+            }
+        }
+
+        private void write(final int count) {
+            if (count <= 0) {
+                return;
+            }
+
+            try {
+                assert stream != null;
+                stream.write(buffer.array(), 0, count);
+            } catch (final IOException e) {
+                throw new SerializationException(e);
+            }
+
+            buffer.flip().position(count);
+            buffer.compact();
+            offset += count;
+        }
+    }
+
+    /**
+     * Writes serialized data into a file, using a buffer that is written to the file whenever it fills up.
+     * <p>
+     * Each write maps exactly the written region of the file, so the file never extends past the serialized data
+     * and never has to be truncated, which is not possible while regions of it are mapped on some platforms.
+     */
+    private static final class MappedSerializer extends BufferSerializer {
+        private final FileChannel channel;
+
+        private MappedSerializer(final FileChannel channel, @Nullable final Options options) {
+            super(MAPPED_BUFFER_SIZE, options);
+            this.channel = channel;
+            reset(ByteBuffer.allocate(MAPPED_BUFFER_SIZE));
+        }
+
+        @Override
+        void flush() {
+            write(buffer.position());
+        }
+
+        @Override
+        void grow(final int count) {
+            // Data after a pending array element length cannot be written yet, so grow the buffer instead.
+            write(pinnedPosition < 0 ? buffer.position() : (int) (pinnedPosition - offset));
+            if (buffer.remaining() < count) {
+                super.grow(count);
+            }
+        }
+
+        private void write(final int count) {
+            if (count <= 0) {
+                return;
+            }
+
+            try {
+                channel.map(FileChannel.MapMode.READ_WRITE, offset, count).put(buffer.array(), 0, count);
+            } catch (final IOException e) {
+                throw new SerializationException(e);
+            }
+
+            buffer.flip().position(count);
+            buffer.compact();
+            offset += count;
+        }
+    }
+
+    /**
+     * Splits serialized data into blocks, which are written to another serializer, optionally compressed.
+     * <p>
+     * Each block is written as its uncompressed size, its stored size, optionally a {@link CRC32C} checksum of
+     * the stored data, and the stored data. If compressing a block does not make it smaller, it is stored
+     * uncompressed, which is indicated by both sizes being equal. The last block is followed by a zero size.
+     * Data starting at the {@link #pinnedPosition} is kept in the buffer, even if that means the buffer has to
+     * grow beyond the block size.
+     */
+    private static final class BlockSerializer extends BufferSerializer {
+        private final BufferSerializer sink;
+        private final int blockSize;
+        private final boolean isCompressed;
+        private final ByteBuffer compressed;
+        @Nullable private final CRC32C checksum;
+
+        private BlockSerializer(final BufferSerializer sink, final Options options) {
+            super(options.blockSize, options);
+            this.sink = sink;
+            this.blockSize = options.blockSize;
+            this.isCompressed = options.isCompressed();
+            this.checksum = options.hasChecksums() ? new CRC32C() : null;
+            this.compressed = isCompressed ? ByteBuffer.allocate(blockSize) : EMPTY_BUFFER;
+            reset(ByteBuffer.allocate(blockSize));
+        }
+
+        @Override
+        void flush() {
+            writeBlocks(buffer.position());
+            sink.writeInt(0);
+            sink.flush();
+        }
+
+        @Override
+        void grow(final int count) {
+            final int available = pinnedPosition < 0 ? buffer.position() : (int) (pinnedPosition - offset);
+            writeBlocks(available - available % blockSize);
+            if (buffer.remaining() < count) {
+                super.grow(count);
+            }
+        }
+
+        private void writeBlocks(final int count) {
+            if (count <= 0) {
+                return;
+            }
+
+            for (int position = 0; position < count; position += blockSize) {
+                writeBlock(buffer.slice(position, Math.min(blockSize, count - position)));
+            }
+
+            buffer.flip().position(count);
+            buffer.compact();
+            offset += count;
+        }
+
+        private void writeBlock(final ByteBuffer data) {
+            final int size = data.remaining();
+
+            // Only keep compressed data if it is smaller, so equal sizes always mean the block is not compressed.
+            final ByteBuffer stored;
+            if (isCompressed && encodeBlock(data.duplicate(), compressed.clear().limit(size - 1))) {
+                stored = compressed.flip();
+            } else {
+                stored = data;
+            }
+
+            sink.writeInt(size);
+            sink.writeInt(stored.remaining());
+            if (checksum != null) {
+                checksum.reset();
+                checksum.update(stored.duplicate());
+                sink.writeInt((int) checksum.getValue());
+            }
+            sink.writeBytes(stored);
+        }
+    }
+
+    /**
+     * Reads serialized data from a {@link ByteBuffer}.
+     * <p>
+     * Positions passed around while reading are absolute, i.e. they include data that has already been discarded
+     * from the buffer by subclasses. The limit of the buffer is kept at the {@link #end} of the current object
+     * array element, so reads of elements can never go past the element's serialized data.
+     */
+    private static class BufferDeserializer extends BinaryDeserializationVisitor {
+        ByteBuffer buffer;
+        long offset;
+        long end;
+        int dataLimit;
+        boolean isCompact;
+        boolean hasStringCodec;
+        boolean isBitPacking;
+        boolean isCompactEnums;
+        boolean isFlatHierarchies;
+        boolean isBlocked;
+        boolean hasChecksums;
+        @Nullable private final Options options;
+        private final int bulkSize;
+        @Nullable private BlockDeserializer blocks;
+        private long nullMask;
+        private int nullMaskCount;
+
+        private BufferDeserializer(@Nullable final Options options) {
+            this(Integer.MAX_VALUE, options);
+        }
+
+        private BufferDeserializer(final int bulkSize, @Nullable final Options options) {
+            this.bulkSize = bulkSize;
+            this.options = options;
+        }
+
+        BufferDeserializer reset(final ByteBuffer buffer) {
+            return reset(buffer, buffer.limit());
+        }
+
+        BufferDeserializer reset(final ByteBuffer buffer, final long end) {
+            this.buffer = buffer;
+            this.end = end;
+            dataLimit = buffer.limit();
+            offset = 0;
+            isCompact = false;
+            hasStringCodec = false;
+            isBitPacking = false;
+            isCompactEnums = false;
+            isFlatHierarchies = false;
+            isBlocked = false;
+            hasChecksums = false;
+            nullMaskCount = 0;
+            return this;
+        }
+
+        void trim() {
+            blocks = null;
+        }
+
+        /**
+         * Returns the deserializer reading blocks of data from this deserializer.
+         */
+        BufferDeserializer blocks() {
+            if (blocks == null) {
+                blocks = new BlockDeserializer(this);
+            }
+            return blocks.begin();
+        }
+
+        /**
+         * Whether {@link #seek(long)} and {@link #slice(long, int)} are supported.
+         */
+        boolean isRandomAccess() {
+            return true;
+        }
+
+        void seek(final long position) {
+            buffer.position((int) (position - offset));
+        }
+
+        ByteBuffer slice(final long position, final int size) {
+            return buffer.duplicate().limit(dataLimit).slice((int) (position - offset), size);
+        }
+
+        /**
+         * Called after a value has been deserialized, to consume any trailing data belonging to it.
+         */
+        void finish() {
+        }
+
+        /**
+         * Reads the header of the next block of data.
+         *
+         * @param offset the offset of the block in the decoded data.
+         * @return the block, or {@code null} if the end of the blocks was reached.
+         */
+        @Nullable
+        Block readBlock(final long offset) {
+            final int size = readInt();
+            if (size == 0) {
+                return null;
+            }
+            final int storedSize = readInt();
+            if (size < 0 || storedSize <= 0 || storedSize > size) {
+                throw new SerializationException("Corrupted data block.");
+            }
+            final long checksum = hasChecksums ? readInt() & 0xFFFFFFFFL : -1;
+            return new Block(position(), storedSize, size, offset, checksum);
+        }
+
+        @Override
+        public boolean getBoolean(final String name) throws SerializationException {
+            return readBoolean();
+        }
+
+        @Override
+        public byte getByte(final String name) throws SerializationException {
+            return readByte();
+        }
+
+        @Override
+        public char getChar(final String name) throws SerializationException {
+            return readChar();
+        }
+
+        @Override
+        public short getShort(final String name) throws SerializationException {
+            return readShort();
+        }
+
+        @Override
+        public int getInt(final String name) throws SerializationException {
+            return readIntValue();
+        }
+
+        @Override
+        public long getLong(final String name) throws SerializationException {
+            return readLongValue();
+        }
+
+        @Override
+        public float getFloat(final String name) throws SerializationException {
+            return readFloat();
+        }
+
+        @Override
+        public double getDouble(final String name) throws SerializationException {
+            return readDouble();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Nullable
+        @Override
+        public Object getObject(final String name, final Class<?> type, @Nullable final Object into) throws SerializationException {
+            if (readIsNull()) {
+                return null;
+            }
+
+            if (type.isArray()) {
+                return getArray(type, into);
+            } else if (type.isEnum()) {
+                final Object[] constants = getEnumConstants(type);
+                return getEnumConstant(type, constants, readOrdinal(constants.length));
+            } else if (type == String.class) {
+                return readString();
+            } else {
+                return getFields(Ceres.getSerializer(type), type, into);
+            }
+        }
+
+        @Nullable
+        @Override
+        public Object getObject(final String name, final Class<?> type, @Nullable final Object into, final li.cil.ceres.api.Serializer<?> serializer) throws SerializationException {
+            if (type.isArray() || type.isEnum() || type == String.class) {
+                return getObject(name, type, into);
+            }
+            return readIsNull() ? null : getFields(serializer, type, into);
+        }
+
+        @Override
+        public void getSuperclass(final String name, final Class<?> type, final Object into) throws SerializationException {
+            if (readSuperclassMarker()) {
+                getFields(Ceres.getSerializer(type), type, into);
+            }
+        }
+
+        @Override
+        public boolean readSuperclassMarker() {
+            return isFlatHierarchies || !readIsNull();
+        }
+
+        @Override
+        public void getNullMask(final int count) throws SerializationException {
+            final int maskSize = getNullMaskSize(count);
+            if (!isBitPacking) {
+                return;
+            }
+
+            long mask = 0;
+            for (int i = 0; i < maskSize; i++) {
+                mask |= (readByte() & 0xFFL) << (i * Byte.SIZE);
+            }
+            nullMask = mask;
+            nullMaskCount = count;
+        }
+
+        private boolean readIsNull() {
+            if (nullMaskCount > 0) {
+                final boolean isNull = (nullMask & 1) != 0;
+                nullMask >>>= 1;
+                nullMaskCount--;
+                return isNull;
+            }
+            return readBoolean();
+        }
+
+        /**
+         * Deserializes the fields of an object, suspending any pending null mask, as when serializing.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object getFields(final li.cil.ceres.api.Serializer serializer, final Class<?> type, @Nullable final Object into) {
+            final long parentNullMask = nullMask;
+            final int parentNullMaskCount = nullMaskCount;
+            nullMaskCount = 0;
+            final Object value = serializer.deserialize(this, type, into);
+            nullMask = parentNullMask;
+            nullMaskCount = parentNullMaskCount;
+            return value;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        public void skip(final String name, final Class<?> type) throws SerializationException {
+            if (type == boolean.class || type == byte.class) {
+                skipBytes(Byte.BYTES);
+            } else if (type == char.class || type == short.class) {
+                skipBytes(Short.BYTES);
+            } else if (type == int.class) {
+                readIntValue();
+            } else if (type == long.class) {
+                readLongValue();
+            } else if (type == float.class) {
+                skipBytes(Float.BYTES);
+            } else if (type == double.class) {
+                skipBytes(Double.BYTES);
+            } else if (readIsNull()) {
+                return; // null
+            } else if (type.isArray()) {
+                skipArray(type);
+            } else if (type.isEnum()) {
+                readOrdinal(getEnumConstants(type).length);
+            } else if (type == String.class) {
+                skipString();
+            } else {
+                skipFields(type);
+            }
+        }
+
+        @Override
+        public void skipSuperclass(final String name, final Class<?> type) throws SerializationException {
+            if (readSuperclassMarker()) {
+                skipFields(type);
+            }
+        }
+
+        /**
+         * Skips the fields of an object, suspending any pending null mask, as when deserializing.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void skipFields(final Class<?> type) {
+            final long parentNullMask = nullMask;
+            final int parentNullMaskCount = nullMaskCount;
+            nullMaskCount = 0;
+            Ceres.getSerializer((Class) type).skip(this, type);
+            nullMask = parentNullMask;
+            nullMaskCount = parentNullMaskCount;
+        }
+
+        private void skipArray(final Class<?> type) {
+            final Class<?> componentType = type.getComponentType();
+
+            final ArraySerializer arraySerializer = getArraySerializer(componentType);
+            if (arraySerializer != null) {
+                arraySerializer.skip(this, type);
+                return;
+            }
+
+            // Jump over elements using their length prefixes, without looking at their contents.
+            final int length = readLength();
+            checkAvailable(length);
+            for (int i = 0; i < length; i++) {
+                final int componentLength = readElementLength();
+                if (componentLength > 0) {
+                    skipBytes(componentLength);
+                }
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object getArray(final Class<?> type, @Nullable final Object into) {
+            final Class<?> componentType = type.getComponentType();
+
+            final ArraySerializer arraySerializer = getArraySerializer(componentType);
+            if (arraySerializer != null) {
+                return arraySerializer.deserialize(this, type, into);
+            }
+
+            final li.cil.ceres.api.Serializer serializer = componentType.isArray() ? null : Ceres.getSerializer(componentType);
+            final int length = readLength();
+            checkAvailable(length);
+            Object[] data = (Object[]) into;
+            if (data == null || data.length != length) {
+                data = (Object[]) Array.newInstance(componentType, length);
+            }
+
+            if (options != null && options.parallelThreshold > 0 && length >= options.parallelThreshold && isRandomAccess()) {
+                getElementsInParallel(componentType, serializer, data);
+                return data;
+            }
+
+            for (int i = 0; i < length; i++) {
+                final int componentLength = readElementLength();
+                if (componentLength <= 0) {
+                    continue;
+                }
+
+                final long elementEnd = position() + componentLength;
+                if (elementEnd > end) {
+                    throw new BufferUnderflowException();
+                }
+
+                data[i] = getElement(componentType, serializer, data[i], elementEnd);
+                skipTo(elementEnd);
+            }
+            return data;
+        }
+
+        /**
+         * Finds the location of each element of the array by skipping over them, then deserializes chunks of the
+         * elements concurrently, each using a separate deserializer reading from a slice of the input.
+         */
+        @SuppressWarnings("rawtypes")
+        private void getElementsInParallel(final Class<?> componentType, @Nullable final li.cil.ceres.api.Serializer serializer, final Object[] data) {
+            final long[] positions = new long[data.length];
+            final int[] lengths = new int[data.length];
+            readElementLocations(positions, lengths);
+
+            final int chunkLength = getParallelChunkLength(data.length);
+            final ArrayList<ForkJoinTask<?>> chunks = new ArrayList<>();
+            try {
+                for (int start = 0; start < data.length; start += chunkLength) {
+                    final int from = start;
+                    final int to = Math.min(start + chunkLength, data.length);
+                    chunks.add(ForkJoinPool.commonPool().submit(() -> {
+                        final long chunkStart = positions[from];
+                        final long chunkEnd = positions[to - 1] + Math.max(0, lengths[to - 1]);
+                        final BufferDeserializer chunk = fork(chunkStart, (int) (chunkEnd - chunkStart));
+                        for (int i = from; i < to; i++) {
+                            if (lengths[i] > 0) {
+                                chunk.seek(positions[i]);
+                                data[i] = chunk.getElement(componentType, serializer, data[i], positions[i] + lengths[i]);
+                            }
+                        }
+                    }));
+                }
+
+                for (final ForkJoinTask<?> chunk : chunks) {
+                    chunk.join();
+                }
+            } finally {
+                for (final ForkJoinTask<?> chunk : chunks) {
+                    chunk.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * Reads an object array whose elements are only deserialized when they are first accessed.
+         * <p>
+         * The elements are deserialized by separate deserializers reading from slices of the data read by this
+         * deserializer, so this requires random access.
+         */
+        @SuppressWarnings("rawtypes")
+        <T> LazyArray<T> getLazyArray(final Class<T> componentType) {
+            if (componentType.isPrimitive() || componentType.isEnum() || componentType == String.class) {
+                throw new SerializationException(String.format("Arrays of type [%s] cannot be deserialized lazily.", componentType.getName()));
+            }
+            if (readIsNull()) {
+                return null;
+            }
+
+            final li.cil.ceres.api.Serializer serializer = componentType.isArray() ? null : Ceres.getSerializer(componentType);
+            final int length = readLength();
+            checkAvailable(length);
+            final long[] positions = new long[length];
+            final int[] lengths = new int[length];
+            readElementLocations(positions, lengths);
+
+            return new LazyArray<>(length, index -> {
+                if (lengths[index] <= 0) {
+                    return null;
+                }
+                final long elementEnd = positions[index] + lengths[index];
+                try {
+                    return componentType.cast(fork(positions[index], lengths[index]).getElement(componentType, serializer, null, elementEnd));
+                } catch (final BufferUnderflowException e) {
+                    throw new SerializationException(e);
+                }
+            });
+        }
+
+        /**
+         * Reads the lengths of the elements of an object array, skipping over their data, to find their locations.
+         */
+        private void readElementLocations(final long[] positions, final int[] lengths) {
+            for (int i = 0; i < positions.length; i++) {
+                final int componentLength = readElementLength();
+                positions[i] = position();
+                lengths[i] = componentLength;
+                if (componentLength > 0) {
+                    if (positions[i] + componentLength > end) {
+                        throw new BufferUnderflowException();
+                    }
+                    skipTo(positions[i] + componentLength);
+                }
+            }
+        }
+
+        /**
+         * Decodes an object array element in place, limiting reads to its serialized data.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object getElement(final Class<?> componentType, @Nullable final li.cil.ceres.api.Serializer serializer, @Nullable final Object into, final long elementEnd) {
+            final long parentEnd = end;
+            setEnd(elementEnd);
+            try {
+                if (serializer != null) {
+                    return getFields(serializer, componentType, into);
+                } else {
+                    return getArray(componentType, into);
+                }
+            } finally {
+                setEnd(parentEnd);
+            }
+        }
+
+        /**
+         * Creates a deserializer reading the specified range of the data read by this deserializer.
+         * <p>
+         * The new deserializer uses the same absolute positions and format as this one, and can be used
+         * concurrently with it.
+         */
+        private BufferDeserializer fork(final long position, final int size) {
+            final BufferDeserializer deserializer = new BufferDeserializer(options).reset(slice(position, size));
+            deserializer.offset = position;
+            deserializer.end = position + size;
+            deserializer.copyFormat(this);
+            return deserializer;
+        }
+
+        long position() {
+            return offset + buffer.position();
+        }
+
+        /**
+         * Uses the same format for values as another deserializer, for reading data nested in that deserializer's.
+         */
+        void copyFormat(final BufferDeserializer source) {
+            isCompact = source.isCompact;
+            hasStringCodec = source.hasStringCodec;
+            isBitPacking = source.isBitPacking;
+            isCompactEnums = source.isCompactEnums;
+            isFlatHierarchies = source.isFlatHierarchies;
+        }
+
+        void readHeader() {
+            if (options == null) {
+                return;
+            }
+
+            if (readByte() != HEADER_MAGIC) {
+                throw new SerializationException("Data was not written using options, or is corrupted.");
+            }
+            final int flags = readByte() & 0xFF;
+            if ((flags & ~SUPPORTED_FLAGS) != 0) {
+                throw new SerializationException(String.format("Data uses unsupported format flags [%x].", flags & ~SUPPORTED_FLAGS));
+            }
+            isCompact = (flags & FLAG_COMPACT_NUMBERS) != 0;
+            hasStringCodec = (flags & FLAG_STRING_CODEC) != 0;
+            isBitPacking = (flags & FLAG_BIT_PACKING) != 0;
+            isCompactEnums = (flags & FLAG_COMPACT_ENUMS) != 0;
+            isFlatHierarchies = (flags & FLAG_FLAT_HIERARCHIES) != 0;
+            isBlocked = (flags & BLOCK_FLAGS) != 0;
+            hasChecksums = (flags & FLAG_CHECKSUMS) != 0;
+        }
+
+        @Override
+        public int readIntValue() {
+            if (isCompact) {
+                final int value = readVarInt();
+                return (value >>> 1) ^ -(value & 1);
+            } else {
+                return readInt();
+            }
+        }
+
+        @Override
+        public long readLongValue() {
+            if (isCompact) {
+                final long value = readVarLong();
+                return (value >>> 1) ^ -(value & 1);
+            } else {
+                return readLong();
+            }
+        }
+
+        int readLength() {
+            return isCompact ? readVarInt() : readInt();
+        }
+
+        int readOrdinal(final int bound) {
+            final int ordinalSize = isCompactEnums ? getOrdinalSize(bound) : 0;
+            if (ordinalSize == Byte.BYTES) {
+                return readByte() & 0xFF;
+            } else if (ordinalSize == Short.BYTES) {
+                return readShort() & 0xFFFF;
+            } else {
+                return readLength();
+            }
+        }
+
+        private int readElementLength() {
+            return isCompact ? readVarInt() - 1 : readInt();
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                final byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed variable length integer.");
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                final byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed variable length integer.");
+        }
+
+        @Override
+        public boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        @Override
+        public byte readByte() {
+            ensureRemaining(Byte.BYTES);
+            return buffer.get();
+        }
+
+        @Override
+        public char readChar() {
+            ensureRemaining(Character.BYTES);
+            return buffer.getChar();
+        }
+
+        @Override
+        public short readShort() {
+            ensureRemaining(Short.BYTES);
+            return buffer.getShort();
+        }
+
+        int readInt() {
+            ensureRemaining(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long readLong() {
+            ensureRemaining(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        @Override
+        public float readFloat() {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        @Override
+        public double readDouble() {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        String readString() {
+            if (!hasStringCodec) {
+                return readUTF();
+            }
+
+            final long header = readVarLong();
+            final long encodedLength = header >>> 1;
+            if (encodedLength > Integer.MAX_VALUE) {
+                throw new SerializationException(String.format("Invalid string length [%d].", encodedLength));
+            }
+            checkAvailable(encodedLength);
+
+            final int length = (int) encodedLength;
+            final Charset charset = (header & 1) != 0 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+            if (buffer.hasArray() && buffer.remaining() >= length) {
+                final int position = buffer.position();
+                buffer.position(position + length);
+                return new String(buffer.array(), buffer.arrayOffset() + position, length, charset);
+            }
+
+            final byte[] data = new byte[length];
+            for (int offset = 0; offset < length; ) {
+                final int count = availableElements(length - offset, Byte.BYTES);
+                buffer.get(data, offset, count);
+                offset += count;
+            }
+            return new String(data, charset);
+        }
+
+        // Same encoding as DataInputStream.readUTF, i.e. modified UTF-8 prefixed with a two-byte length.
+        private String readUTF() {
+            final int encodedLength = readShort() & 0xFFFF;
+            ensureRemaining(encodedLength);
+
+            final int stringEnd = buffer.position() + encodedLength;
+            final char[] chars = new char[encodedLength];
+            int count = 0;
+            while (buffer.position() < stringEnd) {
+                final int a = buffer.get() & 0xFF;
+                if (a < 0x80) {
+                    chars[count++] = (char) a;
+                } else if ((a & 0xE0) == 0xC0) {
+                    final int b = readUTFContinuation(stringEnd);
+                    chars[count++] = (char) (((a & 0x1F) << 6) | b);
+                } else if ((a & 0xF0) == 0xE0) {
+                    final int b = readUTFContinuation(stringEnd);
+                    final int c = readUTFContinuation(stringEnd);
+                    chars[count++] = (char) (((a & 0x0F) << 12) | (b << 6) | c);
+                } else {
+                    throw new SerializationException(String.format("Malformed input around byte %d", position() - 1));
+                }
+            }
+            return new String(chars, 0, count);
+        }
+
+        private int readUTFContinuation(final int stringEnd) {
+            if (buffer.position() >= stringEnd) {
+                throw new SerializationException("Malformed input: partial character at end");
+            }
+            final int value = buffer.get() & 0xFF;
+            if ((value & 0xC0) != 0x80) {
+                throw new SerializationException(String.format("Malformed input around byte %d", position() - 1));
+            }
+            return value & 0x3F;
+        }
+
+        void skipString() {
+            if (hasStringCodec) {
+                skipBytes(readVarLong() >>> 1);
+            } else {
+                skipBytes(readShort() & 0xFFFF);
+            }
+        }
+
+        void skipBytes(final long count) {
+            checkAvailable(count);
+            skipTo(position() + count);
+        }
+
+        /**
+         * Checks that the data of an array with the specified size can be read, before allocating the array.
+         *
+         * @param count the size of the array data, in bytes.
+         */
+        void checkAvailable(final long count) {
+            if (count < 0 || count > end - position()) {
+                throw new BufferUnderflowException();
+            }
+        }
+
+        /**
+         * Makes available up to the specified number of elements of an array for reading them in bulk.
+         * <p>
+         * After reading the elements from the buffer, the position of the buffer must be advanced past them.
+         *
+         * @param count       the number of elements left to read.
+         * @param elementSize the size of a single element, in bytes.
+         * @return the number of elements that may be read from the buffer.
+         */
+        int availableElements(final int count, final int elementSize) {
+            ensureRemaining((int) Math.min((long) count * elementSize, bulkSize));
+            return Math.min(count, buffer.remaining() / elementSize);
+        }
+
+        void ensureRemaining(final int count) {
+            if (buffer.remaining() < count) {
+                fill(count);
+            }
+        }
+
+        void fill(final int count) {
+            throw new BufferUnderflowException();
+        }
+
+        void skipTo(final long position) {
+            long remaining = position - position();
+            while (remaining > buffer.remaining()) {
+                remaining -= buffer.remaining();
+                buffer.position(buffer.limit());
+                fill((int) Math.min(remaining, bulkSize));
+            }
+            buffer.position(buffer.position() + (int) remaining);
+        }
+
+        private void setEnd(final long value) {
+            end = value;
+            buffer.limit((int) Math.min(dataLimit, end - offset));
+        }
+    }
+
+    /**
+     * Reads serialized data from a stream, using a buffer that is refilled from the stream as needed.
+     * <p>
+     * At most the data of the current object array element is read ahead, so no data following the
+     * serialized value is consumed from the stream.
+     */
+    private static final class StreamDeserializer extends BufferDeserializer {
+        @Nullable private DataInputStream stream;
+
+        private StreamDeserializer(@Nullable final Options options) {
+            super(STREAM_BUFFER_SIZE, options);
+            buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+        }
+
+        StreamDeserializer reset(@Nullable final DataInputStream stream) {
+            reset(buffer.clear().limit(0), Long.MAX_VALUE);
+            this.stream = stream;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            if (buffer.capacity() > STREAM_BUFFER_SIZE) {
+                buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            }
+        }
+
+        @Override
+        boolean isRandomAccess() {
+            return false;
+        }
+
+        @Override
+        void fill(final int count) {
+            if (count > end - position()) {
+                throw new BufferUnderflowException();
+            }
+
+            // Keep data that was read ahead, but has not been consumed yet.
+            final int consumed = buffer.position();
+            buffer.limit(dataLimit).position(consumed);
+            if (buffer.capacity() < count) {
+                buffer = ByteBuffer.allocate(Math.max(count, buffer.capacity() * 2)).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            offset += consumed;
+
+            final int required = count - buffer.position();
+            final int readAhead = (int) Math.min(buffer.remaining(), end - offset - buffer.position());
+            try {
+                assert stream != null;
+                if (end == Long.MAX_VALUE) {
+                    stream.readFully(buffer.array(), buffer.position(), required);
+                    buffer.position(buffer.position() + required);
+                } else {
+                    int read = 0;
+                    while (read < required) {
+                        final int result = stream.read(buffer.array(), buffer.position(), readAhead - read);
+                        if (result < 0) {
+                            throw new EOFException();
+                        }
+                        buffer.position(buffer.position() + result);
+                        read += result;
+                    }
+                }
+            } catch (final IOException e) {
+                throw new SerializationException(e);
+            }
+
+            dataLimit = buffer.position();
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Reads serialized data from a file, mapping it into memory read-only in chunks.
+     */
+    private static final class MappedDeserializer extends BufferDeserializer {
+        private final FileChannel channel;
+        private final long fileSize;
+
+        private MappedDeserializer(final FileChannel channel, @Nullable final Options options) throws IOException {
+            super(MAPPED_CHUNK_SIZE, options);
+            this.channel = channel;
+            this.fileSize = channel.size();
+            reset(ByteBuffer.allocate(0), fileSize);
+        }
+
+        @Override
+        void fill(final int count) {
+            final long position = position();
+            if (count > Math.min(end, fileSize) - position) {
+                throw new BufferUnderflowException();
+            }
+
+            final long size = Math.min(Math.max(count, MAPPED_CHUNK_SIZE), fileSize - position);
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (final IOException e) {
+                throw new SerializationException(e);
+            }
+            offset = position;
+            dataLimit = buffer.limit();
+            buffer.limit((int) Math.min(dataLimit, end - offset));
+        }
+
+        @Override
+        void seek(final long position) {
+            // Drop the current chunk, the next read maps a new one at the position.
+            buffer = ByteBuffer.allocate(0);
+            offset = position;
+            dataLimit = 0;
+        }
+
+        @Override
+        ByteBuffer slice(final long position, final int size) {
             try {
-                return stream.readDouble();
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
             } catch (final IOException e) {
                 throw new SerializationException(e);
             }
         }
+    }
+
+    /**
+     * Reads blocks of serialized data written by a {@link BlockSerializer} from another deserializer.
+     * <p>
+     * Blocks are only read from the other deserializer when their data is needed, so that when reading from a
+     * stream, no data following the serialized value is consumed from the stream.
+     */
+    private static final class BlockDeserializer extends BufferDeserializer {
+        private final BufferDeserializer source;
+
+        private BlockDeserializer(final BufferDeserializer source) {
+            super(DEFAULT_BLOCK_SIZE, null);
+            this.source = source;
+            buffer = ByteBuffer.allocate(DEFAULT_BLOCK_SIZE);
+        }
+
+        BlockDeserializer begin() {
+            reset(buffer.clear().limit(0), Long.MAX_VALUE);
+            copyFormat(source);
+            return this;
+        }
 
-        @SuppressWarnings({"unchecked", "rawtypes"})
-        @Nullable
         @Override
-        public Object getObject(final String name, final Class<?> type, @Nullable final Object into) throws SerializationException {
-            if (isNull()) {
-                return null;
-            }
+        boolean isRandomAccess() {
+            return false;
+        }
 
-            if (type.isArray()) {
-                return getArray(stream, type, into);
-            } else if (type.isEnum()) {
-                return type.getEnumConstants()[getInt(name)];
-            } else if (type == String.class) {
-                try {
-                    return stream.readUTF();
-                } catch (final IOException e) {
-                    throw new SerializationException(e);
-                }
-            } else {
-                return Ceres.getSerializer(type).deserialize(this, (Class) type, into);
+        @Override
+        void finish() {
+            // Skip blocks the value did not read, up to and including the end marker.
+            for (Block block = source.readBlock(0); block != null; block = source.readBlock(0)) {
+                source.skipTo(block.position + block.storedSize);
             }
         }
 
-        @FunctionalInterface
-        private interface ArrayComponentDeserializer {
-            Object deserialize(DataInputStream stream, Class<?> type, @Nullable Object into);
-        }
+        @Override
+        void fill(final int count) {
+            if (count > end - position()) {
+                throw new BufferUnderflowException();
+            }
 
-        @SuppressWarnings({"unchecked", "rawtypes"})
-        private static Object getArray(final DataInputStream stream, final Class<?> type, @Nullable final Object into) {
-            final Class<?> componentType = type.getComponentType();
+            // Keep data that was decoded, but has not been consumed yet.
+            final int consumed = buffer.position();
+            buffer.limit(dataLimit).position(consumed);
+            buffer.compact();
+            offset += consumed;
 
-            final ArraySerializer arraySerializer = ARRAY_SERIALIZERS.get(componentType);
-            if (arraySerializer != null) {
-                return arraySerializer.deserialize(stream, type, into);
-            } else {
-                final ArrayComponentDeserializer componentDeserializer;
-                if (componentType.isArray()) {
-                    componentDeserializer = Deserializer::getArray;
-                } else {
-                    final li.cil.ceres.api.Serializer<?> serializer = Ceres.getSerializer(componentType);
-                    componentDeserializer = (s, t, i) -> serializer.deserialize(new Deserializer(s), (Class) t, i);
+            while (buffer.position() < count) {
+                final Block block = source.readBlock(0);
+                if (block == null) {
+                    throw new BufferUnderflowException();
                 }
 
-                try {
-                    final int length = stream.readInt();
-                    Object[] data = (Object[]) into;
-                    if (data == null || data.length != length) {
-                        data = (Object[]) Array.newInstance(componentType, length);
-                    }
-
-                    for (int i = 0; i < length; i++) {
-                        final int componentLength = stream.readInt();
-                        if (componentLength <= 0) {
-                            continue;
-                        }
-                        final byte[] bytes = new byte[componentLength];
-                        stream.readFully(bytes);
-                        data[i] = componentDeserializer.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), componentType, data[i]);
-                    }
-                    return data;
-                } catch (final IOException e) {
-                    throw new SerializationException(e);
+                if (buffer.remaining() < block.size) {
+                    final long capacity = Math.max((long) buffer.position() + block.size, buffer.capacity() * 2L);
+                    buffer = ByteBuffer.allocate((int) Math.min(capacity, Integer.MAX_VALUE)).put(buffer.flip());
                 }
+
+                source.ensureRemaining(block.storedSize);
+                final ByteBuffer data = source.buffer.slice(source.buffer.position(), block.storedSize);
+                source.buffer.position(source.buffer.position() + block.storedSize);
+                block.verify(data);
+                decodeBlock(data, buffer.slice(buffer.position(), block.size));
+                buffer.position(buffer.position() + block.size);
             }
+
+            dataLimit = buffer.position();
+            buffer.flip();
+            buffer.limit((int) Math.min(dataLimit, end - offset));
         }
+    }
 
-        private boolean isNull() throws SerializationException {
-            try {
-                return stream.readBoolean();
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+    /**
+     * The location of a block of data written by a {@link BlockSerializer}.
+     */
+    private static final class Block {
+        final long position;
+        final int storedSize;
+        final int size;
+        final long offset;
+        final long checksum;
+
+        private Block(final long position, final int storedSize, final int size, final long offset, final long checksum) {
+            this.position = position;
+            this.storedSize = storedSize;
+            this.size = size;
+            this.offset = offset;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Checks the stored data of this block against its checksum, if it has one.
+         *
+         * @param data the stored data of this block.
+         */
+        void verify(final ByteBuffer data) {
+            if (checksum < 0) {
+                return;
+            }
+
+            final CRC32C crc = new CRC32C();
+            crc.update(data.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new SerializationException(String.format("Checksum mismatch in data block at byte %d.", position));
             }
         }
     }
 
     private interface ArraySerializer {
-        void serialize(DataOutputStream stream, Object value);
+        void serialize(BufferSerializer serializer, final Class<?> type, Object value);
 
-        Object deserialize(DataInputStream stream, final Class<?> type, @Nullable final Object into);
+        void count(SizeCounter counter, final Class<?> type, Object value);
+
+        Object deserialize(BufferDeserializer deserializer, final Class<?> type, @Nullable final Object into);
+
+        void skip(BufferDeserializer deserializer, final Class<?> type);
     }
 
     private static final class BooleanArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final boolean[] data = (boolean[]) value;
-            try {
-                stream.writeInt(data.length);
+            serializer.writeLength(data.length);
+            if (serializer.isBitPacking) {
+                for (int i = 0; i < data.length; i += Byte.SIZE) {
+                    int bits = 0;
+                    for (int j = 0, count = Math.min(Byte.SIZE, data.length - i); j < count; j++) {
+                        if (data[i + j]) {
+                            bits |= 1 << j;
+                        }
+                    }
+                    serializer.writeByte((byte) bits);
+                }
+            } else {
                 for (final boolean datum : data) {
-                    stream.writeBoolean(datum);
+                    serializer.writeBoolean(datum);
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                boolean[] data = (boolean[]) into;
-                if (data == null || data.length != length) {
-                    data = new boolean[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((boolean[]) value).length;
+            counter.countLength(length);
+            counter.size += counter.isBitPacking ? getPackedSize(length) : (long) length * 1;
+        }
 
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(deserializer.isBitPacking ? getPackedSize(length) : length);
+            boolean[] data = (boolean[]) into;
+            if (data == null || data.length != length) {
+                data = new boolean[length];
+            }
+
+            if (deserializer.isBitPacking) {
+                for (int i = 0; i < length; i += Byte.SIZE) {
+                    final int bits = deserializer.readByte();
+                    for (int j = 0, count = Math.min(Byte.SIZE, length - i); j < count; j++) {
+                        data[i + j] = (bits & (1 << j)) != 0;
+                    }
+                }
+            } else {
                 for (int i = 0; i < length; i++) {
-                    data[i] = stream.readBoolean();
+                    data[i] = deserializer.readBoolean();
                 }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
             }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            final int length = deserializer.readLength();
+            deserializer.skipBytes(deserializer.isBitPacking ? getPackedSize(length) : (long) length * 1);
+        }
+
+        private static long getPackedSize(final int length) {
+            return ((long) length + Byte.SIZE - 1) / Byte.SIZE;
         }
     }
 
     private static final class ByteArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final byte[] data = (byte[]) value;
-            try {
-                stream.writeInt(data.length);
-                stream.write(data);
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            serializer.writeLength(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Byte.BYTES);
+                serializer.buffer.put(data, offset, count);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                byte[] data = (byte[]) into;
-                if (data == null || data.length != length) {
-                    data = new byte[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((byte[]) value).length;
+            counter.countLength(length);
+            counter.size += (long) length * Byte.BYTES;
+        }
 
-                stream.readFully(data);
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(length);
+            byte[] data = (byte[]) into;
+            if (data == null || data.length != length) {
+                data = new byte[length];
             }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Byte.BYTES);
+                deserializer.buffer.get(data, offset, count);
+                offset += count;
+            }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            deserializer.skipBytes((long) deserializer.readLength() * Byte.BYTES);
         }
     }
 
     private static final class CharArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final char[] data = (char[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final char datum : data) {
-                    stream.writeChar(datum);
-                }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            serializer.writeLength(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Character.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                buffer.asCharBuffer().put(data, offset, count);
+                buffer.position(buffer.position() + count * Character.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                char[] data = (char[]) into;
-                if (data == null || data.length != length) {
-                    data = new char[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((char[]) value).length;
+            counter.countLength(length);
+            counter.size += (long) length * Character.BYTES;
+        }
 
-                for (int i = 0; i < length; i++) {
-                    data[i] = stream.readChar();
-                }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable((long) length * Character.BYTES);
+            char[] data = (char[]) into;
+            if (data == null || data.length != length) {
+                data = new char[length];
+            }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Character.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asCharBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Character.BYTES);
+                offset += count;
             }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            deserializer.skipBytes((long) deserializer.readLength() * Character.BYTES);
         }
     }
 
     private static final class ShortArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final short[] data = (short[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final short datum : data) {
-                    stream.writeShort(datum);
-                }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            serializer.writeLength(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Short.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                buffer.asShortBuffer().put(data, offset, count);
+                buffer.position(buffer.position() + count * Short.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                short[] data = (short[]) into;
-                if (data == null || data.length != length) {
-                    data = new short[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((short[]) value).length;
+            counter.countLength(length);
+            counter.size += (long) length * Short.BYTES;
+        }
 
-                for (int i = 0; i < length; i++) {
-                    data[i] = stream.readShort();
-                }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable((long) length * Short.BYTES);
+            short[] data = (short[]) into;
+            if (data == null || data.length != length) {
+                data = new short[length];
             }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Short.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asShortBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Short.BYTES);
+                offset += count;
+            }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            deserializer.skipBytes((long) deserializer.readLength() * Short.BYTES);
         }
     }
 
     private static final class IntArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final int[] data = (int[]) value;
-            try {
-                stream.writeInt(data.length);
+            serializer.writeLength(data.length);
+            if (serializer.isCompact) {
                 for (final int datum : data) {
-                    stream.writeInt(datum);
+                    serializer.writeIntValue(datum);
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                return;
+            }
+
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Integer.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                buffer.asIntBuffer().put(data, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                int[] data = (int[]) into;
-                if (data == null || data.length != length) {
-                    data = new int[length];
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int[] data = (int[]) value;
+            counter.countLength(data.length);
+            if (counter.isCompact) {
+                for (final int datum : data) {
+                    counter.countIntValue(datum);
                 }
+            } else {
+                counter.size += (long) data.length * Integer.BYTES;
+            }
+        }
+
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(deserializer.isCompact ? length : (long) length * Integer.BYTES);
+            int[] data = (int[]) into;
+            if (data == null || data.length != length) {
+                data = new int[length];
+            }
 
+            if (deserializer.isCompact) {
                 for (int i = 0; i < length; i++) {
-                    data[i] = stream.readInt();
+                    data[i] = deserializer.readIntValue();
                 }
                 return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Integer.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asIntBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                offset += count;
+            }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            final int length = deserializer.readLength();
+            if (deserializer.isCompact) {
+                deserializer.checkAvailable(length);
+                for (int i = 0; i < length; i++) {
+                    deserializer.readVarInt();
+                }
+            } else {
+                deserializer.skipBytes((long) length * Integer.BYTES);
             }
         }
     }
 
     private static final class LongArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final long[] data = (long[]) value;
-            try {
-                stream.writeInt(data.length);
+            serializer.writeLength(data.length);
+            if (serializer.isCompact) {
                 for (final long datum : data) {
-                    stream.writeLong(datum);
+                    serializer.writeLongValue(datum);
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+                return;
+            }
+
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Long.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                buffer.asLongBuffer().put(data, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                long[] data = (long[]) into;
-                if (data == null || data.length != length) {
-                    data = new long[length];
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final long[] data = (long[]) value;
+            counter.countLength(data.length);
+            if (counter.isCompact) {
+                for (final long datum : data) {
+                    counter.countLongValue(datum);
                 }
+            } else {
+                counter.size += (long) data.length * Long.BYTES;
+            }
+        }
+
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(deserializer.isCompact ? length : (long) length * Long.BYTES);
+            long[] data = (long[]) into;
+            if (data == null || data.length != length) {
+                data = new long[length];
+            }
 
+            if (deserializer.isCompact) {
                 for (int i = 0; i < length; i++) {
-                    data[i] = stream.readLong();
+                    data[i] = deserializer.readLongValue();
                 }
                 return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Long.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asLongBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                offset += count;
+            }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            final int length = deserializer.readLength();
+            if (deserializer.isCompact) {
+                deserializer.checkAvailable(length);
+                for (int i = 0; i < length; i++) {
+                    deserializer.readVarLong();
+                }
+            } else {
+                deserializer.skipBytes((long) length * Long.BYTES);
             }
         }
     }
 
     private static final class FloatArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final float[] data = (float[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final float datum : data) {
-                    stream.writeFloat(datum);
+            serializer.writeLength(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Float.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                final FloatBuffer view = buffer.asFloatBuffer().put(data, offset, count);
+
+                // Bulk transfers keep NaN payloads, collapse them to the canonical NaN like DataOutputStream does.
+                for (int i = 0; i < count; i++) {
+                    if (Float.isNaN(data[offset + i])) {
+                        view.put(i, Float.NaN);
+                    }
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+
+                buffer.position(buffer.position() + count * Float.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                float[] data = (float[]) into;
-                if (data == null || data.length != length) {
-                    data = new float[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((float[]) value).length;
+            counter.countLength(length);
+            counter.size += (long) length * Float.BYTES;
+        }
 
-                for (int i = 0; i < length; i++) {
-                    data[i] = stream.readFloat();
-                }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable((long) length * Float.BYTES);
+            float[] data = (float[]) into;
+            if (data == null || data.length != length) {
+                data = new float[length];
+            }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Float.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asFloatBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+                offset += count;
             }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            deserializer.skipBytes((long) deserializer.readLength() * Float.BYTES);
         }
     }
 
     private static final class DoubleArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final double[] data = (double[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final double datum : data) {
-                    stream.writeDouble(datum);
+            serializer.writeLength(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                final int count = serializer.reserveElements(data.length - offset, Double.BYTES);
+                final ByteBuffer buffer = serializer.buffer;
+                final DoubleBuffer view = buffer.asDoubleBuffer().put(data, offset, count);
+
+                // Bulk transfers keep NaN payloads, collapse them to the canonical NaN like DataOutputStream does.
+                for (int i = 0; i < count; i++) {
+                    if (Double.isNaN(data[offset + i])) {
+                        view.put(i, Double.NaN);
+                    }
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+
+                buffer.position(buffer.position() + count * Double.BYTES);
+                offset += count;
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                double[] data = (double[]) into;
-                if (data == null || data.length != length) {
-                    data = new double[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final int length = ((double[]) value).length;
+            counter.countLength(length);
+            counter.size += (long) length * Double.BYTES;
+        }
 
-                for (int i = 0; i < length; i++) {
-                    data[i] = stream.readDouble();
-                }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable((long) length * Double.BYTES);
+            double[] data = (double[]) into;
+            if (data == null || data.length != length) {
+                data = new double[length];
+            }
+
+            for (int offset = 0; offset < length; ) {
+                final int count = deserializer.availableElements(length - offset, Double.BYTES);
+                final ByteBuffer buffer = deserializer.buffer;
+                buffer.asDoubleBuffer().get(data, offset, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                offset += count;
             }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            deserializer.skipBytes((long) deserializer.readLength() * Double.BYTES);
         }
     }
 
-    @SuppressWarnings("rawtypes")
+    /**
+     * Stores the ordinal of each element plus one, so that zero can mark {@code null} elements.
+     */
     private static final class EnumArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
-            final Enum[] data = (Enum[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final Enum datum : data) {
-                    stream.writeInt(datum.ordinal());
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
+            final Enum<?>[] data = (Enum<?>[]) value;
+            final int bound = getEnumConstants(type.getComponentType()).length + 1;
+            serializer.writeLength(data.length);
+            final int ordinalSize = serializer.isCompactEnums ? getOrdinalSize(bound) : 0;
+            if (ordinalSize > 0) {
+                for (int offset = 0; offset < data.length; ) {
+                    final int count = serializer.reserveElements(data.length - offset, ordinalSize);
+                    final ByteBuffer buffer = serializer.buffer;
+                    for (int i = offset; i < offset + count; i++) {
+                        final int ordinal = data[i] != null ? data[i].ordinal() + 1 : 0;
+                        if (ordinalSize == Byte.BYTES) {
+                            buffer.put((byte) ordinal);
+                        } else {
+                            buffer.putShort((short) ordinal);
+                        }
+                    }
+                    offset += count;
                 }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            } else {
+                for (final Enum<?> datum : data) {
+                    serializer.writeLength(datum != null ? datum.ordinal() + 1 : 0);
+                }
+            }
+        }
+
+        @Override
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final Enum<?>[] data = (Enum<?>[]) value;
+            final int bound = getEnumConstants(type.getComponentType()).length + 1;
+            counter.countLength(data.length);
+            for (final Enum<?> datum : data) {
+                counter.countOrdinal(datum != null ? datum.ordinal() + 1 : 0, bound);
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
             final Class<?> componentType = type.getComponentType();
-            final Object[] enumConstants = componentType.getEnumConstants();
+            final Object[] constants = getEnumConstants(componentType);
+            final int ordinalSize = deserializer.isCompactEnums ? getOrdinalSize(constants.length + 1) : 0;
+
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable((long) length * (ordinalSize > 0 ? ordinalSize : deserializer.isCompact ? 1 : Integer.BYTES));
+            Enum<?>[] data = (Enum<?>[]) into;
+            if (data == null || data.length != length) {
+                data = (Enum<?>[]) Array.newInstance(componentType, length);
+            }
 
-            try {
-                final int length = stream.readInt();
-                Enum[] data = (Enum[]) into;
-                if (data == null || data.length != length) {
-                    data = (Enum[]) Array.newInstance(componentType, length);
+            if (ordinalSize > 0) {
+                for (int offset = 0; offset < length; ) {
+                    final int count = deserializer.availableElements(length - offset, ordinalSize);
+                    final ByteBuffer buffer = deserializer.buffer;
+                    for (int i = offset; i < offset + count; i++) {
+                        final int ordinal = ordinalSize == Byte.BYTES ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+                        data[i] = ordinal != 0 ? (Enum<?>) getEnumConstant(componentType, constants, ordinal - 1) : null;
+                    }
+                    offset += count;
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    final int ordinal = deserializer.readLength();
+                    data[i] = ordinal != 0 ? (Enum<?>) getEnumConstant(componentType, constants, ordinal - 1) : null;
                 }
+            }
+            return data;
+        }
 
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            final int length = deserializer.readLength();
+            final int ordinalSize = deserializer.isCompactEnums ? getOrdinalSize(getEnumConstants(type.getComponentType()).length + 1) : 0;
+            if (ordinalSize > 0) {
+                deserializer.skipBytes((long) length * ordinalSize);
+            } else if (deserializer.isCompact) {
+                deserializer.checkAvailable(length);
                 for (int i = 0; i < length; i++) {
-                    data[i] = (Enum) enumConstants[stream.readInt()];
+                    deserializer.readVarInt();
                 }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            } else {
+                deserializer.skipBytes((long) length * Integer.BYTES);
             }
         }
     }
 
     private static final class StringArraySerializer implements ArraySerializer {
         @Override
-        public void serialize(final DataOutputStream stream, final Object value) {
+        public void serialize(final BufferSerializer serializer, final Class<?> type, final Object value) {
             final String[] data = (String[]) value;
-            try {
-                stream.writeInt(data.length);
-                for (final String datum : data) {
-                    stream.writeUTF(datum);
-                }
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+            serializer.writeLength(data.length);
+            for (final String datum : data) {
+                serializer.writeString(datum);
             }
         }
 
         @Override
-        public Object deserialize(final DataInputStream stream, final Class<?> type, final Object into) {
-            try {
-                final int length = stream.readInt();
-                String[] data = (String[]) into;
-                if (data == null || data.length != length) {
-                    data = new String[length];
-                }
+        public void count(final SizeCounter counter, final Class<?> type, final Object value) {
+            final String[] data = (String[]) value;
+            counter.countLength(data.length);
+            for (final String datum : data) {
+                counter.countString(datum);
+            }
+        }
 
-                for (int i = 0; i < length; i++) {
-                    data[i] = stream.readUTF();
-                }
-                return data;
-            } catch (final IOException e) {
-                throw new SerializationException(e);
+        @Override
+        public Object deserialize(final BufferDeserializer deserializer, final Class<?> type, final Object into) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(deserializer.hasStringCodec ? length : (long) length * Short.BYTES);
+            String[] data = (String[]) into;
+            if (data == null || data.length != length) {
+                data = new String[length];
+            }
+
+            for (int i = 0; i < length; i++) {
+                data[i] = deserializer.readString();
+            }
+            return data;
+        }
+
+        @Override
+        public void skip(final BufferDeserializer deserializer, final Class<?> type) {
+            final int length = deserializer.readLength();
+            deserializer.checkAvailable(deserializer.hasStringCodec ? length : (long) length * Short.BYTES);
+            for (int i = 0; i < length; i++) {
+                deserializer.skipString();
             }
         }
     }
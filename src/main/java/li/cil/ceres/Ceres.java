@@ -1,16 +1,19 @@
 package li.cil.ceres;
 
 import li.cil.ceres.api.*;
+import li.cil.ceres.internal.LinkedSerializer;
+import li.cil.ceres.internal.PrecompiledSerializer;
 import li.cil.ceres.internal.SerializerFactory;
+import li.cil.ceres.internal.SerializerPrewarmer;
 import li.cil.ceres.serializers.ArraySerializer;
 import li.cil.ceres.serializers.ByteBufferSerializer;
 import li.cil.ceres.serializers.UUIDSerializer;
 
 import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Ceres is a simplistic serialization framework.
@@ -36,6 +39,10 @@ import java.util.UUID;
  * not have a default constructor, deserializing this type into fields not already holding a value the
  * type can be deserialized into, an exception will be thrown during deserialization.
  * <p>
+ * Serializers for types using {@link Serialized} can also be generated at compile time by the Ceres
+ * annotation processor. These are discovered and registered automatically, see
+ * {@link #registerPrecompiledSerializers(ClassLoader)}.
+ * <p>
  * Using Ceres requires an implementation of a {@link SerializationVisitor} and a {@link DeserializationVisitor}.
  * Ceres comes with an implementation serializing to a binary format accessible via {@link BinarySerialization}.
  * <p>
@@ -46,7 +53,8 @@ import java.util.UUID;
  * of the serialized value to know the type the serialized data applies to during deserialization.
  */
 public final class Ceres {
-    private static final Map<Class<?>, Serializer<?>> SERIALIZERS = new HashMap<>();
+    private static final ConcurrentMap<Class<?>, Serializer<?>> SERIALIZERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, FutureTask<Serializer<?>>> PENDING_SERIALIZERS = new ConcurrentHashMap<>();
     private static boolean isInitialized = false;
 
     static {
@@ -62,6 +70,37 @@ public final class Ceres {
 
         putSerializer(ByteBuffer.class, new ByteBufferSerializer());
         putSerializer(UUID.class, new UUIDSerializer());
+
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        registerPrecompiledSerializers(contextClassLoader != null ? contextClassLoader : Ceres.class.getClassLoader());
+    }
+
+    /**
+     * Registers all serializers generated at compile time by the Ceres annotation processor which are
+     * visible to the specified class loader.
+     * <p>
+     * This is called during initialization using the context class loader of the initializing thread. It
+     * only needs to be called explicitly for class loaders created later on, e.g. when loading plugins.
+     * <p>
+     * Precompiled serializers do not replace serializers already assigned to their type.
+     *
+     * @param classLoader the class loader to discover precompiled serializers with.
+     */
+    @SuppressWarnings("rawtypes")
+    public static void registerPrecompiledSerializers(final ClassLoader classLoader) {
+        final Iterator<PrecompiledSerializer> serializers = ServiceLoader.load(PrecompiledSerializer.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!serializers.hasNext()) {
+                    break;
+                }
+
+                final PrecompiledSerializer<?> serializer = serializers.next();
+                SERIALIZERS.putIfAbsent(serializer.getSerializedType(), serializer);
+            } catch (final ServiceConfigurationError ignored) {
+                // Stale or broken registration, the type will use a serializer generated at runtime instead.
+            }
+        }
     }
 
     /**
@@ -95,28 +134,78 @@ public final class Ceres {
     @SuppressWarnings("unchecked")
     @Nullable
     public static <T> Serializer<T> getSerializer(final Class<T> type, final boolean generateMissing) throws SerializationException {
-        synchronized (SERIALIZERS) {
-            if (SERIALIZERS.containsKey(type)) {
-                return (Serializer<T>) SERIALIZERS.get(type);
-            }
+        final Serializer<?> serializer = SERIALIZERS.get(type);
+        if (serializer != null) {
+            return (Serializer<T>) serializer;
+        }
 
-            // NB: this is only relevant for root object array serialization. Whenever arrays
-            // are part of a to-be-serialized object serializers will directly call the put-
-            // and getArray methods on visitors.
-            if (type.isArray()) {
-                return ArraySerializer.INSTANCE;
-            }
+        // NB: this is only relevant for root object array serialization. Whenever arrays
+        // are part of a to-be-serialized object serializers will directly call the put-
+        // and getArray methods on visitors.
+        if (type.isArray()) {
+            return ArraySerializer.INSTANCE;
+        }
 
-            if (generateMissing) {
-                final Serializer<T> serializer = SerializerFactory.generateSerializer(type);
-                SERIALIZERS.put(type, serializer);
-                return serializer;
-            }
+        if (generateMissing) {
+            return (Serializer<T>) generateSerializer(type);
         }
 
         return null;
     }
 
+    /**
+     * Generates serializers for the specified types and all types referenced by their serialized fields.
+     * <p>
+     * Serializers are usually generated lazily, when a type is first serialized. This allows generating
+     * them ahead of time instead, e.g. during startup, to avoid latency spikes on first use. Serializers
+     * are generated in parallel on the {@link ForkJoinPool#commonPool() common pool}.
+     * <p>
+     * The returned future completes once all serializers have been generated. Its value holds the time it
+     * took to generate each serializer. Types that already had a serializer are not included. If generating
+     * any serializer fails, the future completes exceptionally, after all other serializers were generated.
+     * <p>
+     * Referenced types without serialized fields and without a registered serializer, such as boxed primitives
+     * or collections, are skipped. Their serializers are looked up on first use, as usual.
+     *
+     * @param types the types to generate serializers for.
+     * @return a future completing once all serializers have been generated.
+     */
+    public static CompletableFuture<Map<Class<?>, Duration>> prewarm(final Collection<Class<?>> types) {
+        return prewarm(types, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates serializers for the specified types and all types referenced by their serialized fields.
+     * <p>
+     * Like {@link #prewarm(Collection)}, but generates serializers using the specified executor.
+     *
+     * @param types    the types to generate serializers for.
+     * @param executor the executor to generate serializers on.
+     * @return a future completing once all serializers have been generated.
+     */
+    public static CompletableFuture<Map<Class<?>, Duration>> prewarm(final Collection<Class<?>> types, final Executor executor) {
+        return SerializerPrewarmer.prewarm(types, executor);
+    }
+
+    /**
+     * Generates serializers for all types in the specified package and its sub-packages that use the
+     * {@link Serialized} annotation, and all types referenced by their serialized fields.
+     * <p>
+     * Types are searched for using the context class loader of the calling thread. Otherwise, this
+     * behaves like {@link #prewarm(Collection)}.
+     *
+     * @param pkg the package to search for serialized types.
+     * @return a future completing once all serializers have been generated.
+     */
+    public static CompletableFuture<Map<Class<?>, Duration>> prewarm(final Package pkg) {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final ClassLoader classLoader = contextClassLoader != null ? contextClassLoader : Ceres.class.getClassLoader();
+        final Executor executor = ForkJoinPool.commonPool();
+        return CompletableFuture
+                .supplyAsync(() -> SerializerPrewarmer.findSerializedTypes(pkg.getName(), classLoader), executor)
+                .thenCompose(types -> prewarm(types, executor));
+    }
+
     /**
      * Assigns a serializer to the specified type.
      * <p>
@@ -129,12 +218,57 @@ public final class Ceres {
      * @param serializer the serializer to assign to {@code type}.
      */
     public static <T> void putSerializer(final Class<T> type, @Nullable final Serializer<T> serializer) {
-        synchronized (SERIALIZERS) {
-            if (serializer != null) {
-                SERIALIZERS.put(type, serializer);
-            } else {
-                SERIALIZERS.remove(type);
+        if (serializer != null) {
+            SERIALIZERS.put(type, serializer);
+        } else {
+            SERIALIZERS.remove(type);
+        }
+        LinkedSerializer.invalidateAll();
+    }
+
+    /**
+     * Generates a serializer for the specified type, unless one is already being generated.
+     * <p>
+     * Generation happens on the calling thread. If another thread is already generating a serializer
+     * for the same type, this waits for and returns that result instead. Threads generating serializers
+     * for different types do not block each other.
+     */
+    private static Serializer<?> generateSerializer(final Class<?> type) throws SerializationException {
+        final FutureTask<Serializer<?>> task = new FutureTask<>(() -> SerializerFactory.generateSerializer(type));
+        final FutureTask<Serializer<?>> pendingTask = PENDING_SERIALIZERS.putIfAbsent(type, task);
+        if (pendingTask == null) {
+            try {
+                // Re-check after claiming generation, another thread may have completed it in the meantime.
+                final Serializer<?> serializer = SERIALIZERS.get(type);
+                if (serializer != null) {
+                    return serializer;
+                }
+
+                task.run();
+
+                // Explicitly assigned serializers take precedence over the one we just generated.
+                final Serializer<?> generatedSerializer = getTaskResult(type, task);
+                final Serializer<?> existingSerializer = SERIALIZERS.putIfAbsent(type, generatedSerializer);
+                return existingSerializer != null ? existingSerializer : generatedSerializer;
+            } finally {
+                PENDING_SERIALIZERS.remove(type, task);
+            }
+        } else {
+            return getTaskResult(type, pendingTask);
+        }
+    }
+
+    private static Serializer<?> getTaskResult(final Class<?> type, final FutureTask<Serializer<?>> task) throws SerializationException {
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof final SerializationException serializationException) {
+                throw serializationException;
             }
+            throw new SerializationException(String.format("Failed generating serializer for type [%s]", type), e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SerializationException(String.format("Interrupted while waiting for serializer for type [%s]", type), e);
         }
     }
 }
@@ -0,0 +1,84 @@
+package li.cil.ceres;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * A read-only view of a deserialized object array, whose elements are only deserialized when first accessed.
+ * <p>
+ * Obtained via {@link BinarySerialization#deserializeLazy(java.nio.ByteBuffer, Class)}. Until an element is
+ * accessed, it remains in its serialized form in the data it was read from. Once deserialized, elements are
+ * kept, so each element is deserialized at most once.
+ * <p>
+ * Lazy arrays are not thread-safe.
+ *
+ * @param <T> the type of the elements of the array.
+ */
+public final class LazyArray<T> implements Iterable<T> {
+    private static final Object NOT_DECODED = new Object();
+
+    private final Object[] elements;
+    private final IntFunction<T> decoder;
+
+    LazyArray(final int length, final IntFunction<T> decoder) {
+        this.elements = new Object[length];
+        this.decoder = decoder;
+        Arrays.fill(elements, NOT_DECODED);
+    }
+
+    public int length() {
+        return elements.length;
+    }
+
+    /**
+     * Returns the element at the specified index, deserializing it if it has not been accessed before.
+     *
+     * @param index the index of the element.
+     * @return the element at the index.
+     * @throws IndexOutOfBoundsException                if the index is out of bounds.
+     * @throws li.cil.ceres.api.SerializationException if an exception is raised during deserialization.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public T get(final int index) {
+        Object element = elements[index];
+        if (element == NOT_DECODED) {
+            element = decoder.apply(index);
+            elements[index] = element;
+        }
+        return (T) element;
+    }
+
+    /**
+     * Checks whether the element at the specified index has already been deserialized.
+     *
+     * @param index the index of the element.
+     * @return {@code true} if the element has been deserialized; {@code false} otherwise.
+     */
+    public boolean isDecoded(final int index) {
+        return elements[index] != NOT_DECODED;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < elements.length;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+}
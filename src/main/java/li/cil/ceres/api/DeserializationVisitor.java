@@ -126,6 +126,49 @@ public interface DeserializationVisitor {
     @Nullable
     Object getObject(final String name, final Class<?> type, @Nullable final Object into) throws SerializationException;
 
+    /**
+     * Reads an {@code Object} value from the underlying serialization format, using the specified serializer
+     * where {@link #getObject(String, Class, Object)} would obtain one for {@code type}.
+     * <p>
+     * Callers <em>must</em> pass a serializer behaving like the one {@link li.cil.ceres.Ceres#getSerializer(Class)}
+     * returns for {@code type}. The default implementation ignores the serializer.
+     *
+     * @param name       the name passed with the value during serialization.
+     * @param serializer the serializer for {@code type}.
+     * @return the read value.
+     */
+    @Nullable
+    default Object getObject(final String name, final Class<?> type, @Nullable final Object into, final Serializer<?> serializer) throws SerializationException {
+        return getObject(name, type, into);
+    }
+
+    /**
+     * Reads the fields a value inherits from a superclass, written using
+     * {@link SerializationVisitor#putSuperclass(String, Class, Object)}.
+     * <p>
+     * The default implementation calls {@link #getObject(String, Class, Object)}.
+     *
+     * @param name the name of the value to read.
+     * @param type the superclass declaring the fields to read.
+     * @param into the value to read the fields into.
+     */
+    default void getSuperclass(final String name, final Class<?> type, final Object into) throws SerializationException {
+        getObject(name, type, into);
+    }
+
+    /**
+     * Whether values are identified by their position in the underlying format only.
+     * <p>
+     * For such formats, {@link #exists(String)} always returns {@code true}, so serializers may skip calling it.
+     * This is expected to be constant for a visitor, so serializers may query it once per value they deserialize.
+     * The default implementation returns {@code false}.
+     *
+     * @return {@code true} if values are identified by position only; {@code false} otherwise.
+     */
+    default boolean isPositional() {
+        return false;
+    }
+
     /**
      * Checks if there exists a value for the specified name in the underlying format.
      * <p>
@@ -139,4 +182,62 @@ public interface DeserializationVisitor {
     default boolean exists(final String name) throws SerializationException {
         return true;
     }
+
+    /**
+     * Reads the mask written by {@link SerializationVisitor#putNullMask(long, int)}, if the format stores one.
+     * <p>
+     * Must be called with the same {@code count} at the same point the mask was written during serialization.
+     * The default implementation does nothing.
+     *
+     * @param count the number of values covered by the mask, at most 64.
+     */
+    default void getNullMask(final int count) throws SerializationException {
+    }
+
+    /**
+     * Skips over the fields a value inherits from a superclass, written using
+     * {@link SerializationVisitor#putSuperclass(String, Class, Object)}.
+     * <p>
+     * The default implementation calls {@link #skip(String, Class)}.
+     *
+     * @param name the name passed with the fields during serialization.
+     * @param type the superclass declaring the fields to skip.
+     */
+    default void skipSuperclass(final String name, final Class<?> type) throws SerializationException {
+        skip(name, type);
+    }
+
+    /**
+     * Skips over a value in the underlying serialization format, without deserializing it if possible.
+     * <p>
+     * The {@code type} must be the type passed with the value during serialization. For values written using
+     * one of the methods for primitive types, this is the respective primitive type, e.g. {@code int.class}.
+     * <p>
+     * The default implementation reads the value and discards it. Implementations <em>should</em> override
+     * this if their format allows finding the end of a value without deserializing it.
+     *
+     * @param name the name passed with the value during serialization.
+     * @param type the type of the value to skip.
+     */
+    default void skip(final String name, final Class<?> type) throws SerializationException {
+        if (type == boolean.class) {
+            getBoolean(name);
+        } else if (type == byte.class) {
+            getByte(name);
+        } else if (type == char.class) {
+            getChar(name);
+        } else if (type == short.class) {
+            getShort(name);
+        } else if (type == int.class) {
+            getInt(name);
+        } else if (type == long.class) {
+            getLong(name);
+        } else if (type == float.class) {
+            getFloat(name);
+        } else if (type == double.class) {
+            getDouble(name);
+        } else {
+            getObject(name, type, null);
+        }
+    }
 }
@@ -124,4 +124,53 @@ public interface SerializationVisitor {
      * @param value the value to write.
      */
     void putObject(final String name, final Class<?> type, @Nullable final Object value) throws SerializationException;
+
+    /**
+     * Writes an {@code Object} value to the underlying serialization format, using the specified serializer
+     * where {@link #putObject(String, Class, Object)} would obtain one for {@code type}.
+     * <p>
+     * Callers <em>must</em> pass a serializer behaving like the one {@link li.cil.ceres.Ceres#getSerializer(Class)}
+     * returns for {@code type}. This allows callers serializing many values of the same type to look up the
+     * serializer once. The default implementation ignores the serializer.
+     *
+     * @param name       the name identifying the value during deserialization.
+     * @param value      the value to write.
+     * @param serializer the serializer for {@code type}.
+     */
+    default void putObject(final String name, final Class<?> type, @Nullable final Object value, final Serializer<?> serializer) throws SerializationException {
+        putObject(name, type, value);
+    }
+
+    /**
+     * Writes the fields a value inherits from a superclass, after the serializer of the value's type wrote its own.
+     * <p>
+     * The value is never {@code null}, so formats may omit any {@code null} flag they store for values written
+     * using {@link #putObject(String, Class, Object)}. Serializers calling this <em>must</em> call
+     * {@link DeserializationVisitor#getSuperclass(String, Class, Object)} at the same point during
+     * deserialization. The default implementation calls {@link #putObject(String, Class, Object)}.
+     *
+     * @param name  the name identifying the value during deserialization.
+     * @param type  the superclass declaring the fields to write.
+     * @param value the value to write.
+     */
+    default void putSuperclass(final String name, final Class<?> type, final Object value) throws SerializationException {
+        putObject(name, type, value);
+    }
+
+    /**
+     * Announces which of the next values written using {@link #putObject(String, Class, Object)} are {@code null}.
+     * <p>
+     * Bit {@code i} of {@code mask} is set if the {@code i}-th of the next {@code count} values passed to
+     * {@link #putObject(String, Class, Object)} by the calling serializer is {@code null}. Formats storing a
+     * flag for each value may store these flags together instead. Values written by serializers called from
+     * {@link #putObject(String, Class, Object)} are not counted.
+     * <p>
+     * Serializers calling this <em>must</em> call {@link DeserializationVisitor#getNullMask(int)} with the
+     * same {@code count} at the same point during deserialization. The default implementation does nothing.
+     *
+     * @param mask  the bits indicating which values are {@code null}.
+     * @param count the number of values covered by the mask, at most 64.
+     */
+    default void putNullMask(final long mask, final int count) throws SerializationException {
+    }
 }
@@ -18,8 +18,13 @@ import java.lang.annotation.Target;
  * <p>
  * Adding this annotation to a {@code transient} field or a {@code final} field holding an immutable
  * value will lead to a {@link SerializationException} during serializer generation.
+ * <p>
+ * This annotation may also be used on a single constructor or static factory method of a class, in which
+ * case new values are created by passing it the values of all serialized fields, in the order of their
+ * declaration, instead of using the default constructor. All {@code final} fields are serialized in this case.
+ * Records are always created using their canonical constructor.
  */
-@Target({ElementType.FIELD, ElementType.TYPE})
+@Target({ElementType.FIELD, ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Serialized {
 }
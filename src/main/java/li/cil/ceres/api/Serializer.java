@@ -48,4 +48,20 @@ public interface Serializer<T> {
      * @throws SerializationException if an exception is raised by the {@link DeserializationVisitor}.
      */
     T deserialize(final DeserializationVisitor visitor, final Class<T> type, @Nullable final Object value) throws SerializationException;
+
+    /**
+     * Skips over a value using the specified visitor, without creating an instance if possible.
+     * <p>
+     * Implementations <em>should</em> check for and skip the same values {@link #deserialize(DeserializationVisitor, Class, Object)}
+     * reads, using {@link DeserializationVisitor#skip(String, Class)}. The default implementation deserializes
+     * a new value and discards it.
+     *
+     * @param visitor the implementation to skip basic values with.
+     * @param type    the type to skip.
+     *                This matches {@link T} unless implementing a raw serializer.
+     * @throws SerializationException if an exception is raised by the {@link DeserializationVisitor}.
+     */
+    default void skip(final DeserializationVisitor visitor, final Class<T> type) throws SerializationException {
+        deserialize(visitor, type, null);
+    }
 }
@@ -0,0 +1,39 @@
+package li.cil.ceres.internal;
+
+import li.cil.ceres.api.DeserializationVisitor;
+
+/**
+ * Base class of the visitors reading the format of {@link li.cil.ceres.BinarySerialization}.
+ * <p>
+ * The counterpart of {@link BinarySerializationVisitor}: the methods declared here do the same as the
+ * respective {@code get} methods, for use by serializers generated at runtime.
+ */
+public abstract class BinaryDeserializationVisitor implements DeserializationVisitor {
+    public abstract boolean readBoolean();
+
+    public abstract byte readByte();
+
+    public abstract char readChar();
+
+    public abstract short readShort();
+
+    public abstract int readIntValue();
+
+    public abstract long readLongValue();
+
+    public abstract float readFloat();
+
+    public abstract double readDouble();
+
+    @Override
+    public final boolean isPositional() {
+        return true;
+    }
+
+    /**
+     * Reads what {@link BinarySerializationVisitor#writeSuperclassMarker()} wrote.
+     *
+     * @return {@code true} if the fields of the superclass follow; {@code false} otherwise.
+     */
+    public abstract boolean readSuperclassMarker();
+}
@@ -0,0 +1,35 @@
+package li.cil.ceres.internal;
+
+import li.cil.ceres.api.SerializationVisitor;
+
+/**
+ * Base class of the visitors writing the format of {@link li.cil.ceres.BinarySerialization}.
+ * <p>
+ * Serializers generated at runtime check for this type and then write primitive values using the methods
+ * declared here, which do the same as the respective {@code put} methods, but are called without going through
+ * the {@link SerializationVisitor} interface. This allows the JIT to inline them into the generated code, even
+ * when many other visitor implementations are in use.
+ */
+public abstract class BinarySerializationVisitor implements SerializationVisitor {
+    public abstract void writeBoolean(final boolean value);
+
+    public abstract void writeByte(final byte value);
+
+    public abstract void writeChar(final char value);
+
+    public abstract void writeShort(final short value);
+
+    public abstract void writeIntValue(final int value);
+
+    public abstract void writeLongValue(final long value);
+
+    public abstract void writeFloat(final float value);
+
+    public abstract void writeDouble(final double value);
+
+    /**
+     * Writes what {@link #putSuperclass(String, Class, Object)} writes before the fields of the superclass, for
+     * generated serializers writing these fields themselves.
+     */
+    public abstract void writeSuperclassMarker();
+}
@@ -11,7 +11,11 @@ import org.objectweb.asm.signature.SignatureWriter;
 import sun.misc.Unsafe;
 
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.function.BiFunction;
@@ -45,6 +49,11 @@ final class CompiledSerializer {
     private static final int SERIALIZER_FIELD_VALUE_INDEX = 4;
     private static final int DESERIALIZER_VISITOR_INDEX = 1;
     private static final int DESERIALIZER_VALUE_INDEX = 3;
+    private static final int DESERIALIZER_IS_POSITIONAL_INDEX = 4;
+    private static final int SKIP_IS_POSITIONAL_INDEX = 3;
+    private static final int DESERIALIZER_FIRST_FIELD_VALUE_INDEX = 5;
+
+    private static final boolean SPECIALIZE_BINARY = !Boolean.getBoolean("li.cil.ceres.disableBinarySpecialization");
 
     @SuppressWarnings("unchecked")
     public static <T> Serializer<T> generateSerializer(final Class<T> type) throws SerializationException {
@@ -83,6 +92,26 @@ final class CompiledSerializer {
                         Type.getInternalName(GeneratedSerializer.class)
                 });
 
+        // Serializers for field types, looked up on first use: static final LinkedSerializer SERIALIZER_field;
+        final MethodVisitor clinit = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        final ArrayList<Field> linkedFields = new ArrayList<>(fields);
+        if (SPECIALIZE_BINARY) {
+            // Same for inlined superclasses and their fields: static final LinkedSerializer SUPERCLASS_type;
+            for (final Class<?> parentType : collectInlinedSuperclasses(type)) {
+                linkedFields.addAll(SerializerUtils.collectSerializableFields(parentType));
+                generateLinkedSerializerField(cw, clinit, className, getSuperclassSerializerName(parentType), parentType);
+            }
+        }
+        for (final Field field : linkedFields) {
+            if (isLinked(field.getType())) {
+                generateLinkedSerializerField(cw, clinit, className, getLinkedSerializerName(field), field.getType());
+            }
+        }
+        clinit.visitInsn(Opcodes.RETURN);
+        clinit.visitMaxs(-1, -1);
+        clinit.visitEnd();
+
         // Constructor
         final MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
         init.visitCode();
@@ -108,13 +137,19 @@ final class CompiledSerializer {
         hasSerializedFields.visitMaxs(-1, -1);
         hasSerializedFields.visitEnd();
 
+        final String serializeBinaryDescriptor = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(BinarySerializationVisitor.class), Type.getType(Class.class), Type.getType(Object.class));
+        final String deserializeBinaryDescriptor = Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(BinaryDeserializationVisitor.class), Type.getType(Class.class), Type.getType(Object.class));
+
         // serialize()
         final MethodVisitor serialize = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, "serialize", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(SerializationVisitor.class), Type.getType(Class.class), Type.getType(Object.class)), null, new String[]{
                 Type.getInternalName(SerializationException.class)
         });
         serialize.visitCode();
         {
-            generateSerializeMethod(serialize, type, fields);
+            if (SPECIALIZE_BINARY) {
+                generateBinaryDispatch(serialize, className, "serializeBinary", BinarySerializationVisitor.class, serializeBinaryDescriptor);
+            }
+            generateSerializeMethod(serialize, className, type, fields, false);
         }
         serialize.visitMaxs(-1, -1);
         serialize.visitEnd();
@@ -125,11 +160,49 @@ final class CompiledSerializer {
         });
         deserialize.visitCode();
         {
-            generateDeserializeMethod(deserialize, type, fields);
+            if (SPECIALIZE_BINARY) {
+                generateBinaryDispatch(deserialize, className, "deserializeBinary", BinaryDeserializationVisitor.class, deserializeBinaryDescriptor);
+            }
+            generateDeserializeMethod(deserialize, className, type, fields, false);
         }
         deserialize.visitMaxs(-1, -1);
         deserialize.visitEnd();
 
+        if (SPECIALIZE_BINARY) {
+            // serializeBinary()
+            final MethodVisitor serializeBinary = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, "serializeBinary", serializeBinaryDescriptor, null, new String[]{
+                    Type.getInternalName(SerializationException.class)
+            });
+            serializeBinary.visitCode();
+            {
+                generateSerializeMethod(serializeBinary, className, type, fields, true);
+            }
+            serializeBinary.visitMaxs(-1, -1);
+            serializeBinary.visitEnd();
+
+            // deserializeBinary()
+            final MethodVisitor deserializeBinary = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, "deserializeBinary", deserializeBinaryDescriptor, null, new String[]{
+                    Type.getInternalName(SerializationException.class)
+            });
+            deserializeBinary.visitCode();
+            {
+                generateDeserializeMethod(deserializeBinary, className, type, fields, true);
+            }
+            deserializeBinary.visitMaxs(-1, -1);
+            deserializeBinary.visitEnd();
+        }
+
+        // skip()
+        final MethodVisitor skip = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, "skip", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(DeserializationVisitor.class), Type.getType(Class.class)), null, new String[]{
+                Type.getInternalName(SerializationException.class)
+        });
+        skip.visitCode();
+        {
+            generateSkipMethod(skip, type, fields);
+        }
+        skip.visitMaxs(-1, -1);
+        skip.visitEnd();
+
         cw.visitEnd();
 
         try {
@@ -140,32 +213,120 @@ final class CompiledSerializer {
         }
     }
 
-    private static <T> void generateSerializeMethod(final MethodVisitor mv, final Class<T> type, final ArrayList<Field> fields) {
-        int fieldValueCount = 0;
+    /**
+     * Forwards to the variant of a method specialized for the binary format, if the visitor is a binary visitor.
+     * The specialized variants call the visitor directly instead of through its interface, and write primitive
+     * values without passing field names.
+     */
+    private static void generateBinaryDispatch(final MethodVisitor mv, final String className, final String name, final Class<?> visitorType, final String descriptor) {
+        final Label genericLabel = new Label();
+
+        // if (visitor instanceof visitorType) return name((visitorType) visitor, type, value);
+        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+        mv.visitTypeInsn(Opcodes.INSTANCEOF, Type.getInternalName(visitorType));
+        mv.visitJumpInsn(Opcodes.IFEQ, genericLabel);
+        {
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(visitorType));
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, className, name, descriptor, false);
+            final Type returnType = Type.getReturnType(descriptor);
+            mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        }
+        mv.visitLabel(genericLabel);
+    }
+
+    private static void generateLinkedSerializerField(final ClassWriter cw, final MethodVisitor clinit, final String className, final String name, final Class<?> type) {
+        cw.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL, name, Type.getDescriptor(LinkedSerializer.class), null, null).visitEnd();
+        clinit.visitTypeInsn(Opcodes.NEW, Type.getInternalName(LinkedSerializer.class));
+        clinit.visitInsn(Opcodes.DUP);
+        clinit.visitLdcInsn(Type.getType(type));
+        clinit.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(LinkedSerializer.class), "<init>", "(Ljava/lang/Class;)V", false);
+        clinit.visitFieldInsn(Opcodes.PUTSTATIC, className, name, Type.getDescriptor(LinkedSerializer.class));
+    }
 
+    private static <T> void generateSerializeMethod(final MethodVisitor mv, final String className, final Class<T> type, final ArrayList<Field> fields, final boolean isBinary) {
         // value = (type) value; to satisfy class verification.
         mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
         mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
         mv.visitVarInsn(Opcodes.ASTORE, SERIALIZER_VALUE_INDEX);
 
+        // Local variable names must be unique across all fields, including inlined ones.
+        int fieldValueCount = generateSerializeFields(mv, className, fields, 0, isBinary);
+
+        // Inline fields of superclasses, as long as they would be serialized by generated serializers anyway.
+        final ArrayList<Class<?>> inlinedTypes = isBinary ? collectInlinedSuperclasses(type) : new ArrayList<>();
+        final Label[] fallbackLabels = new Label[inlinedTypes.size()];
+        Class<?> fieldsType = type;
+        for (int i = 0; i < inlinedTypes.size(); i++) {
+            final Class<?> parentType = inlinedTypes.get(i);
+            fallbackLabels[i] = new Label();
+
+            // if (!SUPERCLASS_parentType.isGenerated()) goto fallback;
+            mv.visitFieldInsn(Opcodes.GETSTATIC, className, getSuperclassSerializerName(parentType), Type.getDescriptor(LinkedSerializer.class));
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(LinkedSerializer.class), "isGenerated", "()Z", false);
+            mv.visitJumpInsn(Opcodes.IFEQ, fallbackLabels[i]);
+
+            // visitor.writeSuperclassMarker();
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+            generateSerializationVisitorCall(mv, true, "writeSuperclassMarker", "()V");
+
+            fieldValueCount = generateSerializeFields(mv, className, SerializerUtils.collectSerializableFields(parentType), fieldValueCount, true);
+            fieldsType = parentType;
+        }
+
+        if (hasSuperclass(fieldsType)) {
+            generatePutSuperclassCall(mv, fieldsType, isBinary);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+
+        for (int i = 0; i < inlinedTypes.size(); i++) {
+            mv.visitLabel(fallbackLabels[i]);
+            generatePutSuperclassCall(mv, i > 0 ? inlinedTypes.get(i - 1) : type, true);
+            mv.visitInsn(Opcodes.RETURN);
+        }
+    }
+
+    private static int generateSerializeFields(final MethodVisitor mv, final String className, final ArrayList<Field> fields, int fieldValueCount, final boolean isBinary) {
+        final ArrayList<Field> nullMaskFields = SerializerUtils.collectNullMaskFields(fields);
+        if (!nullMaskFields.isEmpty()) {
+            // visitor.putNullMask((value.field0 == null ? 1L << 0 : 0) | ..., nullMaskFields.size());
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+            mv.visitInsn(Opcodes.LCONST_0);
+            for (int i = 0; i < nullMaskFields.size(); i++) {
+                final Field field = nullMaskFields.get(i);
+                final Label nonnullLabel = new Label();
+                mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(field.getType()));
+                mv.visitJumpInsn(Opcodes.IFNONNULL, nonnullLabel);
+                mv.visitLdcInsn(1L << i);
+                mv.visitInsn(Opcodes.LOR);
+                mv.visitLabel(nonnullLabel);
+            }
+            mv.visitLdcInsn(nullMaskFields.size());
+            generateSerializationVisitorCall(mv, isBinary, "putNullMask", "(JI)V");
+        }
+
         for (final Field field : fields) {
             final Class<?> fieldType = field.getType();
             if (fieldType == boolean.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putBoolean");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putBoolean", isBinary);
             } else if (fieldType == byte.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putByte");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putByte", isBinary);
             } else if (fieldType == char.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putChar");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putChar", isBinary);
             } else if (fieldType == short.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putShort");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putShort", isBinary);
             } else if (fieldType == int.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putInt");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putInt", isBinary);
             } else if (fieldType == long.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putLong");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putLong", isBinary);
             } else if (fieldType == float.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putFloat");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putFloat", isBinary);
             } else if (fieldType == double.class) {
-                generateSerializePrimitiveCall(mv, type, field, fieldType, "putDouble");
+                generateSerializePrimitiveCall(mv, field, fieldType, "putDouble", isBinary);
             } else {
                 final Label fieldValueValidLabel = new Label();
                 final Label nothrowLabel = new Label(), throwDedupLabel = new Label(), throwLabel = new Label(), endifLabel = new Label();
@@ -173,7 +334,7 @@ final class CompiledSerializer {
                 mv.visitLocalVariable("fieldValue" + fieldValueCount++, Type.getDescriptor(fieldType), null, fieldValueValidLabel, endifLabel, SERIALIZER_FIELD_VALUE_INDEX);
 
                 mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
-                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(type), field.getName(), Type.getDescriptor(fieldType));
+                mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
 
                 mv.visitInsn(Opcodes.DUP);
                 mv.visitVarInsn(Opcodes.ASTORE, SERIALIZER_FIELD_VALUE_INDEX);
@@ -230,7 +391,7 @@ final class CompiledSerializer {
                         // args[1] = type.getName();
                         mv.visitInsn(Opcodes.DUP); // [..., {}, {}]
                         mv.visitLdcInsn(1); // [..., {}, {}, 2]
-                        mv.visitLdcInsn(type.getName()); // [..., {}, {}, 1, typeName]
+                        mv.visitLdcInsn(field.getDeclaringClass().getName()); // [..., {}, {}, 1, typeName]
                         mv.visitInsn(Opcodes.AASTORE); // [..., {fieldValueTypeName, fieldTypeName, typeName}]
 
                         // args[2] = field.getName();
@@ -260,29 +421,83 @@ final class CompiledSerializer {
                     mv.visitLdcInsn(field.getName());
                     mv.visitLdcInsn(Type.getType(fieldType));
                     mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_FIELD_VALUE_INDEX);
-                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(SerializationVisitor.class),
-                            "putObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V", true);
+                    if (isLinked(fieldType)) {
+                        mv.visitFieldInsn(Opcodes.GETSTATIC, className, getLinkedSerializerName(field), Type.getDescriptor(LinkedSerializer.class));
+                        generateSerializationVisitorCall(mv, isBinary, "putObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;Lli/cil/ceres/api/Serializer;)V");
+                    } else {
+                        generateSerializationVisitorCall(mv, isBinary, "putObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V");
+                    }
                 }
                 mv.visitLabel(endifLabel);
             }
         }
 
-        final Class<?> parentType = type.getSuperclass();
-        if (parentType != null && parentType != Object.class) {
-            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
-            mv.visitLdcInsn("<super>");
-            mv.visitLdcInsn(Type.getType(type));
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Class.class),
-                    "getSuperclass", "()Ljava/lang/Class;", false);
-            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
-            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(SerializationVisitor.class),
-                    "putObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V", true);
+        return fieldValueCount;
+    }
+
+    private static void generatePutSuperclassCall(final MethodVisitor mv, final Class<?> type, final boolean isBinary) {
+        // visitor.putSuperclass("<super>", type.getSuperclass(), value);
+        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+        mv.visitLdcInsn("<super>");
+        mv.visitLdcInsn(Type.getType(type));
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Class.class),
+                "getSuperclass", "()Ljava/lang/Class;", false);
+        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
+        generateSerializationVisitorCall(mv, isBinary, "putSuperclass", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V");
+    }
+
+    private static <T> void generateDeserializeMethod(final MethodVisitor mv, final String className, final Class<T> type, final ArrayList<Field> fields, final boolean isBinary) {
+        final Executable creator = SerializerUtils.findCreator(type);
+        if (creator != null) {
+            generateCreateFromFields(mv, className, type, fields, creator, isBinary);
+        } else {
+            generateCreateOrReuseValue(mv, type);
+            if (!isBinary) {
+                generateIsPositionalCall(mv, fields, DESERIALIZER_IS_POSITIONAL_INDEX);
+            }
+            generateDeserializeFields(mv, className, fields, isBinary);
         }
 
-        mv.visitInsn(Opcodes.RETURN);
+        // Inline fields of superclasses, matching the serialize method.
+        final ArrayList<Class<?>> inlinedTypes = isBinary ? collectInlinedSuperclasses(type) : new ArrayList<>();
+        final Label[] fallbackLabels = new Label[inlinedTypes.size()];
+        final Label returnLabel = new Label();
+        Class<?> fieldsType = type;
+        for (int i = 0; i < inlinedTypes.size(); i++) {
+            final Class<?> parentType = inlinedTypes.get(i);
+            fallbackLabels[i] = new Label();
+
+            // if (!SUPERCLASS_parentType.isGenerated()) goto fallback;
+            mv.visitFieldInsn(Opcodes.GETSTATIC, className, getSuperclassSerializerName(parentType), Type.getDescriptor(LinkedSerializer.class));
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(LinkedSerializer.class), "isGenerated", "()Z", false);
+            mv.visitJumpInsn(Opcodes.IFEQ, fallbackLabels[i]);
+
+            // if (!visitor.readSuperclassMarker()) return value;
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+            generateDeserializationVisitorCall(mv, true, "readSuperclassMarker", "()Z");
+            mv.visitJumpInsn(Opcodes.IFEQ, returnLabel);
+
+            generateDeserializeFields(mv, className, SerializerUtils.collectSerializableFields(parentType), true);
+            fieldsType = parentType;
+        }
+
+        if (hasSuperclass(fieldsType)) {
+            generateGetSuperclassCall(mv, fieldsType, isBinary);
+        }
+
+        mv.visitLabel(returnLabel);
+        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+        mv.visitInsn(Opcodes.ARETURN);
+
+        for (int i = 0; i < inlinedTypes.size(); i++) {
+            mv.visitLabel(fallbackLabels[i]);
+            generateGetSuperclassCall(mv, i > 0 ? inlinedTypes.get(i - 1) : type, true);
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+            mv.visitInsn(Opcodes.ARETURN);
+        }
     }
 
-    private static <T> void generateDeserializeMethod(final MethodVisitor mv, final Class<T> type, final ArrayList<Field> fields) {
+    private static void generateCreateOrReuseValue(final MethodVisitor mv, final Class<?> type) {
         final Label nonnullLabel = new Label();
         mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
 
@@ -325,92 +540,374 @@ final class CompiledSerializer {
         mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
         mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
         mv.visitVarInsn(Opcodes.ASTORE, DESERIALIZER_VALUE_INDEX);
+    }
+
+    /**
+     * Deserializes the fields of a type creating its values using a constructor or factory method taking the
+     * values of its fields. Field values are read into local variables first, defaulting to the values of the
+     * passed value, if any, for values that do not exist. A new value is created from these in any case.
+     */
+    private static void generateCreateFromFields(final MethodVisitor mv, final String className, final Class<?> type, final ArrayList<Field> fields, final Executable creator, final boolean isBinary) {
+        final int[] fieldValueIndices = new int[fields.size()];
+        int nextIndex = DESERIALIZER_FIRST_FIELD_VALUE_INDEX;
+        for (int i = 0; i < fields.size(); i++) {
+            fieldValueIndices[i] = nextIndex;
+            nextIndex += Type.getType(fields.get(i).getType()).getSize();
+        }
+
+        final Label defaultsLabel = new Label(), readLabel = new Label();
+
+        // if (value != null) fieldValue = ((type) value).field; else fieldValue = default;
+        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+        mv.visitJumpInsn(Opcodes.IFNULL, defaultsLabel);
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            final Type fieldType = Type.getType(field.getType());
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(type));
+            mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), fieldType.getDescriptor());
+            mv.visitVarInsn(fieldType.getOpcode(Opcodes.ISTORE), fieldValueIndices[i]);
+        }
+        mv.visitJumpInsn(Opcodes.GOTO, readLabel);
+        mv.visitLabel(defaultsLabel);
+        for (int i = 0; i < fields.size(); i++) {
+            final Type fieldType = Type.getType(fields.get(i).getType());
+            if (fieldType.getSort() == Type.LONG) {
+                mv.visitInsn(Opcodes.LCONST_0);
+            } else if (fieldType.getSort() == Type.FLOAT) {
+                mv.visitInsn(Opcodes.FCONST_0);
+            } else if (fieldType.getSort() == Type.DOUBLE) {
+                mv.visitInsn(Opcodes.DCONST_0);
+            } else if (fieldType.getSort() == Type.ARRAY || fieldType.getSort() == Type.OBJECT) {
+                mv.visitInsn(Opcodes.ACONST_NULL);
+            } else {
+                mv.visitInsn(Opcodes.ICONST_0);
+            }
+            mv.visitVarInsn(fieldType.getOpcode(Opcodes.ISTORE), fieldValueIndices[i]);
+        }
+        mv.visitLabel(readLabel);
+
+        if (!isBinary) {
+            generateIsPositionalCall(mv, fields, DESERIALIZER_IS_POSITIONAL_INDEX);
+        }
+        generateGetNullMaskCall(mv, fields, isBinary);
+
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            final Class<?> fieldType = field.getType();
+            final Label endifLabel = new Label();
+
+            if (!isBinary) {
+                generateExistsCheck(mv, field, DESERIALIZER_IS_POSITIONAL_INDEX, endifLabel);
+            }
+            {
+                // fieldValue = visitor.getX(field.getName());
+                if (fieldType.isPrimitive()) {
+                    generateReadPrimitiveCall(mv, field, fieldType, getPrimitiveMethodName(fieldType), isBinary);
+                } else {
+                    // Never deserialize into values held by the passed value, these may be shared with it.
+                    generateDeserializeObjectCall(mv, className, field, fieldType, false, isBinary);
+                    mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fieldType));
+                }
+                mv.visitVarInsn(Type.getType(fieldType).getOpcode(Opcodes.ISTORE), fieldValueIndices[i]);
+            }
+            mv.visitLabel(endifLabel);
+        }
+
+        // value = new type(fieldValue0, ...); or value = type.create(fieldValue0, ...);
+        if (creator instanceof Constructor) {
+            mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(type));
+            mv.visitInsn(Opcodes.DUP);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            mv.visitVarInsn(Type.getType(fields.get(i).getType()).getOpcode(Opcodes.ILOAD), fieldValueIndices[i]);
+        }
+        if (creator instanceof final Constructor<?> constructor) {
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(type), "<init>", Type.getConstructorDescriptor(constructor), false);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(type), creator.getName(), Type.getMethodDescriptor((Method) creator), false);
+        }
+        mv.visitVarInsn(Opcodes.ASTORE, DESERIALIZER_VALUE_INDEX);
+    }
+
+    private static void generateDeserializeFields(final MethodVisitor mv, final String className, final ArrayList<Field> fields, final boolean isBinary) {
+        generateGetNullMaskCall(mv, fields, isBinary);
 
         for (final Field field : fields) {
             final Label endifLabel = new Label();
 
-            // if (visitor.exists(field.getName()))
-            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
-            mv.visitLdcInsn(field.getName());
-            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
-                    "exists", "(Ljava/lang/String;)Z", true);
-            mv.visitJumpInsn(Opcodes.IFEQ, endifLabel);
+            // The binary format is positional, values always exist.
+            if (!isBinary) {
+                generateExistsCheck(mv, field, DESERIALIZER_IS_POSITIONAL_INDEX, endifLabel);
+            }
             {
                 mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
 
                 final Class<?> fieldType = field.getType();
                 if (fieldType == boolean.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getBoolean");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getBoolean", isBinary);
                 } else if (fieldType == byte.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getByte");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getByte", isBinary);
                 } else if (fieldType == char.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getChar");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getChar", isBinary);
                 } else if (fieldType == short.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getShort");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getShort", isBinary);
                 } else if (fieldType == int.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getInt");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getInt", isBinary);
                 } else if (fieldType == long.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getLong");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getLong", isBinary);
                 } else if (fieldType == float.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getFloat");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getFloat", isBinary);
                 } else if (fieldType == double.class) {
-                    generateDeserializePrimitiveCall(mv, type, field, fieldType, "getDouble");
+                    generateDeserializePrimitiveCall(mv, field, fieldType, "getDouble", isBinary);
                 } else if (Modifier.isFinal(field.getModifiers())) {
                     // Must deserialize into existing final field references, we never overwrite final field values.
                     // This means there is the weird edge-case where the length of a serialized array may
                     // differ from the currently assigned array. In that case the serialized value silently
                     // get ignores. I'll probably kick myself for this in the future.
-                    generateDeserializeObjectCall(mv, type, field, fieldType);
+                    generateDeserializeObjectCall(mv, className, field, fieldType, isBinary);
                     mv.visitInsn(Opcodes.POP2);
                 } else {
-                    generateDeserializeObjectCall(mv, type, field, fieldType);
+                    generateDeserializeObjectCall(mv, className, field, fieldType, isBinary);
                     mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fieldType));
-                    mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(type), field.getName(), Type.getDescriptor(fieldType));
+                    mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
                 }
             }
             mv.visitLabel(endifLabel);
         }
+    }
 
-        final Class<?> parentType = type.getSuperclass();
-        if (parentType != null && parentType != Object.class) {
+    private static void generateGetSuperclassCall(final MethodVisitor mv, final Class<?> type, final boolean isBinary) {
+        // visitor.getSuperclass("<super>", type.getSuperclass(), value);
+        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+        mv.visitLdcInsn("<super>");
+        mv.visitLdcInsn(Type.getType(type));
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Class.class),
+                "getSuperclass", "()Ljava/lang/Class;", false);
+        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+        generateDeserializationVisitorCall(mv, isBinary, "getSuperclass", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V");
+    }
+
+    private static <T> void generateSkipMethod(final MethodVisitor mv, final Class<T> type, final ArrayList<Field> fields) {
+        generateIsPositionalCall(mv, fields, SKIP_IS_POSITIONAL_INDEX);
+        generateGetNullMaskCall(mv, fields, false);
+
+        for (final Field field : fields) {
+            final Label endifLabel = new Label();
+
+            generateExistsCheck(mv, field, SKIP_IS_POSITIONAL_INDEX, endifLabel);
+            {
+                // visitor.skip(field.getName(), fieldType);
+                mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+                mv.visitLdcInsn(field.getName());
+                final Class<?> fieldType = field.getType();
+                if (fieldType.isPrimitive()) {
+                    // Class constants cannot be loaded for primitive types, use e.g. Integer.TYPE instead.
+                    final Class<?> boxedType = MethodType.methodType(fieldType).wrap().returnType();
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(boxedType), "TYPE", Type.getDescriptor(Class.class));
+                } else {
+                    mv.visitLdcInsn(Type.getType(fieldType));
+                }
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
+                        "skip", "(Ljava/lang/String;Ljava/lang/Class;)V", true);
+            }
+            mv.visitLabel(endifLabel);
+        }
+
+        if (hasSuperclass(type)) {
             mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
             mv.visitLdcInsn("<super>");
             mv.visitLdcInsn(Type.getType(type));
             mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Class.class),
                     "getSuperclass", "()Ljava/lang/Class;", false);
-            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
             mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
-                    "getObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)Ljava/lang/Object;", true);
+                    "skipSuperclass", "(Ljava/lang/String;Ljava/lang/Class;)V", true);
         }
 
-        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
-        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitInsn(Opcodes.RETURN);
     }
 
-    private static <T> void generateSerializePrimitiveCall(final MethodVisitor mv, final Class<T> type, final Field field, final Class<?> fieldType, final String name) {
-        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
-        mv.visitLdcInsn(field.getName());
-        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
-        mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(type), field.getName(), Type.getDescriptor(fieldType));
-        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(SerializationVisitor.class),
-                name, Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(String.class), Type.getType(fieldType)), true);
+    private static void generateIsPositionalCall(final MethodVisitor mv, final ArrayList<Field> fields, final int isPositionalIndex) {
+        if (!fields.isEmpty()) {
+            // isPositional = visitor.isPositional();
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
+                    "isPositional", "()Z", true);
+            mv.visitVarInsn(Opcodes.ISTORE, isPositionalIndex);
+        }
     }
 
-    private static <T> void generateDeserializePrimitiveCall(final MethodVisitor mv, final Class<T> type, final Field field, final Class<?> fieldType, final String name) {
+    private static void generateExistsCheck(final MethodVisitor mv, final Field field, final int isPositionalIndex, final Label endifLabel) {
+        final Label existsLabel = new Label();
+
+        // if (isPositional || visitor.exists(field.getName()))
+        mv.visitVarInsn(Opcodes.ILOAD, isPositionalIndex);
+        mv.visitJumpInsn(Opcodes.IFNE, existsLabel);
         mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
         mv.visitLdcInsn(field.getName());
         mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
-                name, Type.getMethodDescriptor(Type.getType(fieldType), Type.getType(String.class)), true);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(type), field.getName(), Type.getDescriptor(fieldType));
+                "exists", "(Ljava/lang/String;)Z", true);
+        mv.visitJumpInsn(Opcodes.IFEQ, endifLabel);
+        mv.visitLabel(existsLabel);
+    }
+
+    private static void generateGetNullMaskCall(final MethodVisitor mv, final ArrayList<Field> fields, final boolean isBinary) {
+        final int nullMaskFieldCount = SerializerUtils.collectNullMaskFields(fields).size();
+        if (nullMaskFieldCount > 0) {
+            // visitor.getNullMask(nullMaskFieldCount);
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+            mv.visitLdcInsn(nullMaskFieldCount);
+            generateDeserializationVisitorCall(mv, isBinary, "getNullMask", "(I)V");
+        }
     }
 
-    private static <T> void generateDeserializeObjectCall(final MethodVisitor mv, final Class<T> type, final Field field, final Class<?> fieldType) {
+    private static void generateSerializePrimitiveCall(final MethodVisitor mv, final Field field, final Class<?> fieldType, final String name, final boolean isBinary) {
+        mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VISITOR_INDEX);
+        if (isBinary) {
+            // visitor.writeX(value.field);
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
+            mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
+            generateSerializationVisitorCall(mv, true, getBinaryMethodName("write", fieldType), Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(fieldType)));
+        } else {
+            mv.visitLdcInsn(field.getName());
+            mv.visitVarInsn(Opcodes.ALOAD, SERIALIZER_VALUE_INDEX);
+            mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
+            generateSerializationVisitorCall(mv, false, name, Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(String.class), Type.getType(fieldType)));
+        }
+    }
+
+    private static void generateDeserializePrimitiveCall(final MethodVisitor mv, final Field field, final Class<?> fieldType, final String name, final boolean isBinary) {
+        generateReadPrimitiveCall(mv, field, fieldType, name, isBinary);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
+    }
+
+    private static void generateReadPrimitiveCall(final MethodVisitor mv, final Field field, final Class<?> fieldType, final String name, final boolean isBinary) {
+        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
+        if (isBinary) {
+            // visitor.readX();
+            generateDeserializationVisitorCall(mv, true, getBinaryMethodName("read", fieldType), Type.getMethodDescriptor(Type.getType(fieldType)));
+        } else {
+            mv.visitLdcInsn(field.getName());
+            generateDeserializationVisitorCall(mv, false, name, Type.getMethodDescriptor(Type.getType(fieldType), Type.getType(String.class)));
+        }
+    }
+
+    private static void generateSerializationVisitorCall(final MethodVisitor mv, final boolean isBinary, final String name, final String descriptor) {
+        if (isBinary) {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(BinarySerializationVisitor.class), name, descriptor, false);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(SerializationVisitor.class), name, descriptor, true);
+        }
+    }
+
+    private static void generateDeserializationVisitorCall(final MethodVisitor mv, final boolean isBinary, final String name, final String descriptor) {
+        if (isBinary) {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(BinaryDeserializationVisitor.class), name, descriptor, false);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class), name, descriptor, true);
+        }
+    }
+
+    private static String getPrimitiveMethodName(final Class<?> fieldType) {
+        final String name = fieldType.getName();
+        return "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String getBinaryMethodName(final String prefix, final Class<?> fieldType) {
+        if (fieldType == int.class) {
+            return prefix + "IntValue";
+        } else if (fieldType == long.class) {
+            return prefix + "LongValue";
+        } else {
+            final String name = fieldType.getName();
+            return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+
+    private static void generateDeserializeObjectCall(final MethodVisitor mv, final String className, final Field field, final Class<?> fieldType, final boolean isBinary) {
+        generateDeserializeObjectCall(mv, className, field, fieldType, true, isBinary);
+    }
+
+    private static void generateDeserializeObjectCall(final MethodVisitor mv, final String className, final Field field, final Class<?> fieldType, final boolean intoFieldValue, final boolean isBinary) {
         mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VISITOR_INDEX);
         mv.visitLdcInsn(field.getName());
         mv.visitLdcInsn(Type.getType(fieldType));
-        mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
-        mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(type), field.getName(), Type.getDescriptor(fieldType));
-        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DeserializationVisitor.class),
-                "getObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)Ljava/lang/Object;", true);
+        if (intoFieldValue) {
+            mv.visitVarInsn(Opcodes.ALOAD, DESERIALIZER_VALUE_INDEX);
+            mv.visitFieldInsn(Opcodes.GETFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), Type.getDescriptor(fieldType));
+        } else {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        }
+        if (isLinked(fieldType)) {
+            mv.visitFieldInsn(Opcodes.GETSTATIC, className, getLinkedSerializerName(field), Type.getDescriptor(LinkedSerializer.class));
+            generateDeserializationVisitorCall(mv, isBinary, "getObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;Lli/cil/ceres/api/Serializer;)Ljava/lang/Object;");
+        } else {
+            generateDeserializationVisitorCall(mv, isBinary, "getObject", "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)Ljava/lang/Object;");
+        }
+    }
+
+    /**
+     * Whether values of a field type are passed to visitors along with a {@link LinkedSerializer}. Visitors handle
+     * arrays themselves, and usually enums and strings, too, so these are passed as they are.
+     */
+    private static boolean isLinked(final Class<?> fieldType) {
+        return !fieldType.isPrimitive() && !fieldType.isArray() && !fieldType.isEnum() && fieldType != String.class;
+    }
+
+    private static String getLinkedSerializerName(final Field field) {
+        return "SERIALIZER_" + Type.getInternalName(field.getDeclaringClass()).replace('/', '_') + "_" + field.getName();
+    }
+
+    private static String getSuperclassSerializerName(final Class<?> parentType) {
+        return "SUPERCLASS_" + Type.getInternalName(parentType).replace('/', '_');
+    }
+
+    private static boolean hasSuperclass(final Class<?> type) {
+        final Class<?> parentType = type.getSuperclass();
+        return parentType != null && parentType != Object.class && parentType != Record.class;
+    }
+
+    /**
+     * Collects the superclasses of a type whose fields the serializer generated for the type serializes itself
+     * when specialized for the binary format, starting with the direct superclass. The generated class can only
+     * access private fields of the type itself, so this stops at the first superclass declaring serialized fields
+     * not accessible from the type's package, or created using a constructor or factory method.
+     */
+    private static ArrayList<Class<?>> collectInlinedSuperclasses(final Class<?> type) {
+        final ArrayList<Class<?>> types = new ArrayList<>();
+        Class<?> parentType = type;
+        while (hasSuperclass(parentType)) {
+            parentType = parentType.getSuperclass();
+            if (!isAccessible(type, parentType, parentType.getModifiers())) {
+                break;
+            }
+
+            final ArrayList<Field> fields;
+            try {
+                // Final fields of types created using a constructor or factory method cannot be assigned from here.
+                if (SerializerUtils.findCreator(parentType) != null) {
+                    break;
+                }
+                fields = SerializerUtils.collectSerializableFields(parentType);
+            } catch (final SerializationException ignored) {
+                break; // Let the serializer generated for the superclass report this when it is used.
+            }
+
+            boolean isAccessible = true;
+            for (final Field field : fields) {
+                isAccessible &= !Modifier.isPrivate(field.getModifiers()) && isAccessible(type, parentType, field.getModifiers());
+            }
+            if (!isAccessible) {
+                break;
+            }
+
+            types.add(parentType);
+        }
+        return types;
+    }
+
+    private static boolean isAccessible(final Class<?> type, final Class<?> declaringType, final int modifiers) {
+        return Modifier.isPublic(modifiers) || (declaringType.getClassLoader() == type.getClassLoader() &&
+                                                declaringType.getPackageName().equals(type.getPackageName()));
     }
 }
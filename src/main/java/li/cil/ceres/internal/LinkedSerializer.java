@@ -0,0 +1,86 @@
+package li.cil.ceres.internal;
+
+import li.cil.ceres.Ceres;
+import li.cil.ceres.api.DeserializationVisitor;
+import li.cil.ceres.api.SerializationException;
+import li.cil.ceres.api.SerializationVisitor;
+import li.cil.ceres.api.Serializer;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delegates to the serializer currently assigned to a type, without looking it up on every call.
+ * <p>
+ * Generated serializers hold one of these for each of the types of their fields, and pass it along with the field
+ * values to the visitor. The serializer for the type is looked up when first used, so serializers of types referencing
+ * each other can be generated independently. It is looked up again after {@link Ceres#putSerializer(Class, Serializer)}
+ * changed the assigned serializers.
+ *
+ * @param <T> the type the serializer provides serialization for.
+ */
+public final class LinkedSerializer<T> implements Serializer<T> {
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private final Class<T> type;
+    @Nullable private Link<T> link;
+
+    public LinkedSerializer(final Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Causes all linked serializers to look up the serializer for their type again on next use.
+     */
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Whether the serializer currently assigned to the type was generated, in which case generated serializers
+     * may serialize values of the type themselves, in the same format.
+     *
+     * @return {@code true} if the assigned serializer was generated; {@code false} otherwise.
+     */
+    public boolean isGenerated() {
+        return getSerializer() instanceof GeneratedSerializer;
+    }
+
+    @Override
+    public void serialize(final SerializationVisitor visitor, final Class<T> type, final Object value) throws SerializationException {
+        getSerializer().serialize(visitor, type, value);
+    }
+
+    @Override
+    public T deserialize(final DeserializationVisitor visitor, final Class<T> type, @Nullable final Object value) throws SerializationException {
+        return getSerializer().deserialize(visitor, type, value);
+    }
+
+    @Override
+    public void skip(final DeserializationVisitor visitor, final Class<T> type) throws SerializationException {
+        getSerializer().skip(visitor, type);
+    }
+
+    private Serializer<T> getSerializer() {
+        // Read the generation before the lookup, so a concurrent change is picked up on the next call at the latest.
+        final int generation = GENERATION.get();
+        final Link<T> link = this.link;
+        if (link != null && link.generation == generation) {
+            return link.serializer;
+        }
+
+        final Serializer<T> serializer = Ceres.getSerializer(type);
+        this.link = new Link<>(serializer, generation);
+        return serializer;
+    }
+
+    private static final class Link<T> {
+        final Serializer<T> serializer;
+        final int generation;
+
+        private Link(final Serializer<T> serializer, final int generation) {
+            this.serializer = serializer;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package li.cil.ceres.internal;
+
+import li.cil.ceres.Ceres;
+import li.cil.ceres.api.SerializationException;
+import li.cil.ceres.api.Serializer;
+
+/**
+ * Interface for serializers generated at compile time by the Ceres annotation processor.
+ * <p>
+ * Implementations are discovered using {@link java.util.ServiceLoader} and registered for the
+ * type returned by {@link #getSerializedType()}. They behave like serializers generated at
+ * runtime, so they also implement {@link GeneratedSerializer}.
+ *
+ * @param <T> the type the serializer provides serialization for.
+ */
+public interface PrecompiledSerializer<T> extends Serializer<T>, GeneratedSerializer {
+    /**
+     * The type this serializer was generated for.
+     *
+     * @return the type this serializer provides serialization for.
+     */
+    Class<T> getSerializedType();
+
+    /**
+     * Validates that the value of a non-primitive field can be serialized by the serializer for the field type.
+     * <p>
+     * This is the same check serializers generated at runtime perform; it is called by generated code when
+     * the type of the value in a field does not match the declared type of the field.
+     *
+     * @param fieldValue the value currently assigned to the field.
+     * @param fieldType  the declared type of the field.
+     * @param type       the type declaring the field.
+     * @param fieldName  the name of the field.
+     * @throws SerializationException if no explicit serializer has been registered for the field type.
+     */
+    static void validatePolymorphicFieldValue(final Object fieldValue, final Class<?> fieldType, final Class<?> type, final String fieldName) throws SerializationException {
+        final Serializer<?> serializer = Ceres.getSerializer(fieldType, false);
+        if (serializer == null || serializer instanceof GeneratedSerializer) {
+            throw new SerializationException(String.format("Value type [%s] does not match field type in field [%s.%s] and no explicit serializer has been registered for field type [%s]. Polymorphism is not supported when using generated serializers.", fieldValue.getClass().getName(), type.getName(), fieldName, fieldType.getName()));
+        }
+    }
+}
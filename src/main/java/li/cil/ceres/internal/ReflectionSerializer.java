@@ -7,14 +7,14 @@ import li.cil.ceres.api.SerializationVisitor;
 import li.cil.ceres.api.Serializer;
 
 import javax.annotation.Nullable;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.lang.reflect.*;
 import java.util.ArrayList;
 
 @SuppressWarnings("rawtypes")
 final class ReflectionSerializer implements Serializer, GeneratedSerializer {
     private final ArrayList<Field> fields;
+    private final ArrayList<Field> nullMaskFields;
+    @Nullable private final Executable creator;
 
     @SuppressWarnings("unchecked")
     public static <T> Serializer<T> generateSerializer(final Class<T> type) throws SerializationException {
@@ -27,11 +27,18 @@ final class ReflectionSerializer implements Serializer, GeneratedSerializer {
             field.setAccessible(true);
         }
 
-        return new ReflectionSerializer(fields);
+        final Executable creator = SerializerUtils.findCreator(type);
+        if (creator != null) {
+            creator.setAccessible(true);
+        }
+
+        return new ReflectionSerializer(fields, creator);
     }
 
-    private ReflectionSerializer(final ArrayList<Field> fields) {
+    private ReflectionSerializer(final ArrayList<Field> fields, @Nullable final Executable creator) {
         this.fields = fields;
+        this.nullMaskFields = SerializerUtils.collectNullMaskFields(fields);
+        this.creator = creator;
     }
 
     @Override
@@ -42,6 +49,21 @@ final class ReflectionSerializer implements Serializer, GeneratedSerializer {
     @SuppressWarnings("unchecked")
     @Override
     public void serialize(final SerializationVisitor visitor, final Class type, final Object value) throws SerializationException {
+        if (!nullMaskFields.isEmpty()) {
+            long nullMask = 0;
+            for (int i = 0; i < nullMaskFields.size(); i++) {
+                final Field field = nullMaskFields.get(i);
+                try {
+                    if (field.get(value) == null) {
+                        nullMask |= 1L << i;
+                    }
+                } catch (final Throwable e) {
+                    throw new SerializationException(String.format("Failed serializing field [%s.%s]", type.getName(), field.getName()), e);
+                }
+            }
+            visitor.putNullMask(nullMask, nullMaskFields.size());
+        }
+
         for (final Field field : fields) {
             try {
                 final Class fieldType = field.getType();
@@ -77,14 +99,53 @@ final class ReflectionSerializer implements Serializer, GeneratedSerializer {
         }
 
         final Class parentType = type.getSuperclass();
-        if (parentType != null && parentType != Object.class) {
-            visitor.putObject("<super>", parentType, value);
+        if (parentType != null && parentType != Object.class && parentType != Record.class) {
+            visitor.putSuperclass("<super>", parentType, value);
         }
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Object deserialize(final DeserializationVisitor visitor, final Class type, @Nullable Object value) throws SerializationException {
+        if (creator != null) {
+            value = createFromFields(visitor, type, value);
+        } else {
+            value = deserializeFields(visitor, type, value);
+        }
+
+        final Class parentType = type.getSuperclass();
+        if (parentType != null && parentType != Object.class && parentType != Record.class) {
+            visitor.getSuperclass("<super>", parentType, value);
+        }
+
+        return value;
+    }
+
+    @Override
+    public void skip(final DeserializationVisitor visitor, final Class type) throws SerializationException {
+        if (!nullMaskFields.isEmpty()) {
+            visitor.getNullMask(nullMaskFields.size());
+        }
+
+        final boolean isPositional = visitor.isPositional();
+        for (final Field field : fields) {
+            try {
+                if (isPositional || visitor.exists(field.getName())) {
+                    visitor.skip(field.getName(), field.getType());
+                }
+            } catch (final Throwable e) {
+                throw new SerializationException(String.format("Failed skipping field [%s.%s]", type.getName(), field.getName()), e);
+            }
+        }
+
+        final Class parentType = type.getSuperclass();
+        if (parentType != null && parentType != Object.class && parentType != Record.class) {
+            visitor.skipSuperclass("<super>", parentType);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object deserializeFields(final DeserializationVisitor visitor, final Class type, @Nullable Object value) throws SerializationException {
         if (value == null) {
             if (Modifier.isAbstract(type.getModifiers())) {
                 throw new SerializationException(String.format("Cannot create new instance of abstract type [%s].", type));
@@ -101,9 +162,14 @@ final class ReflectionSerializer implements Serializer, GeneratedSerializer {
             }
         }
 
+        if (!nullMaskFields.isEmpty()) {
+            visitor.getNullMask(nullMaskFields.size());
+        }
+
+        final boolean isPositional = visitor.isPositional();
         for (final Field field : fields) {
             try {
-                if (visitor.exists(field.getName())) {
+                if (isPositional || visitor.exists(field.getName())) {
                     final Class fieldType = field.getType();
                     if (fieldType == boolean.class) {
                         field.setBoolean(value, visitor.getBoolean(field.getName()));
@@ -136,11 +202,93 @@ final class ReflectionSerializer implements Serializer, GeneratedSerializer {
             }
         }
 
-        final Class parentType = type.getSuperclass();
-        if (parentType != null && parentType != Object.class) {
-            visitor.getObject("<super>", parentType, value);
+        return value;
+    }
+
+    /**
+     * Reads the values of all fields first, then creates a new value from them. Values of fields that do not
+     * exist are taken from the passed value, if any.
+     */
+    private Object createFromFields(final DeserializationVisitor visitor, final Class type, @Nullable final Object value) throws SerializationException {
+        assert creator != null;
+
+        final Object[] fieldValues = new Object[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            try {
+                fieldValues[i] = value != null ? field.get(value) : getDefaultValue(field.getType());
+            } catch (final Throwable e) {
+                throw new SerializationException(String.format("Failed deserializing field [%s.%s]", type.getName(), field.getName()), e);
+            }
         }
 
-        return value;
+        if (!nullMaskFields.isEmpty()) {
+            visitor.getNullMask(nullMaskFields.size());
+        }
+
+        final boolean isPositional = visitor.isPositional();
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            try {
+                if (isPositional || visitor.exists(field.getName())) {
+                    final Class fieldType = field.getType();
+                    if (fieldType == boolean.class) {
+                        fieldValues[i] = visitor.getBoolean(field.getName());
+                    } else if (fieldType == byte.class) {
+                        fieldValues[i] = visitor.getByte(field.getName());
+                    } else if (fieldType == char.class) {
+                        fieldValues[i] = visitor.getChar(field.getName());
+                    } else if (fieldType == short.class) {
+                        fieldValues[i] = visitor.getShort(field.getName());
+                    } else if (fieldType == int.class) {
+                        fieldValues[i] = visitor.getInt(field.getName());
+                    } else if (fieldType == long.class) {
+                        fieldValues[i] = visitor.getLong(field.getName());
+                    } else if (fieldType == float.class) {
+                        fieldValues[i] = visitor.getFloat(field.getName());
+                    } else if (fieldType == double.class) {
+                        fieldValues[i] = visitor.getDouble(field.getName());
+                    } else {
+                        // Never deserialize into values held by the passed value, these may be shared with it.
+                        fieldValues[i] = visitor.getObject(field.getName(), fieldType, null);
+                    }
+                }
+            } catch (final Throwable e) {
+                throw new SerializationException(String.format("Failed deserializing field [%s.%s]", type.getName(), field.getName()), e);
+            }
+        }
+
+        try {
+            if (creator instanceof final Constructor constructor) {
+                return constructor.newInstance(fieldValues);
+            } else {
+                return ((Method) creator).invoke(null, fieldValues);
+            }
+        } catch (final Throwable e) {
+            throw new SerializationException(String.format("Failed instantiating type [%s]", type.getName()), e);
+        }
+    }
+
+    @Nullable
+    private static Object getDefaultValue(final Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0.0;
+        } else {
+            return null;
+        }
     }
 }
@@ -0,0 +1,201 @@
+package li.cil.ceres.internal;
+
+import li.cil.ceres.Ceres;
+import li.cil.ceres.api.SerializationException;
+import li.cil.ceres.api.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Generates serializers for a set of types and all types transitively referenced by their serialized fields.
+ * <p>
+ * Each type is generated in a separate task on the provided executor, so independent types are generated
+ * in parallel. Referenced types are discovered as serializers are generated, and are scheduled right away.
+ * Referenced types are only followed if they have serialized fields or an assigned serializer, other types are
+ * left to be looked up lazily.
+ */
+public final class SerializerPrewarmer {
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private final Executor executor;
+    private final Set<Class<?>> seenTypes = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, Duration> timings = new ConcurrentHashMap<>();
+    private final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger(1); // Released once all roots are scheduled.
+    private final CompletableFuture<Map<Class<?>, Duration>> result = new CompletableFuture<>();
+
+    public static CompletableFuture<Map<Class<?>, Duration>> prewarm(final Collection<Class<?>> types, final Executor executor) {
+        final SerializerPrewarmer prewarmer = new SerializerPrewarmer(executor);
+        for (final Class<?> type : types) {
+            prewarmer.schedule(type, false);
+        }
+        prewarmer.release();
+        return prewarmer.result;
+    }
+
+    /**
+     * Finds all types in a package and its sub-packages that use {@link li.cil.ceres.api.Serialized}.
+     * <p>
+     * Only packages located in directories and jar files are supported. Types that fail to load are ignored.
+     *
+     * @param packageName the name of the package to search.
+     * @param classLoader the class loader to search and load types with.
+     * @return the list of found types.
+     * @throws SerializationException if the class loader's resources cannot be enumerated.
+     */
+    public static List<Class<?>> findSerializedTypes(final String packageName, final ClassLoader classLoader) throws SerializationException {
+        final String packagePath = packageName.replace('.', '/');
+        final ArrayList<String> classNames = new ArrayList<>();
+        try {
+            final Enumeration<URL> urls = classLoader.getResources(packagePath);
+            while (urls.hasMoreElements()) {
+                final URL url = urls.nextElement();
+                if ("file".equals(url.getProtocol())) {
+                    collectClassNames(Paths.get(url.toURI()), packageName, classNames);
+                } else if ("jar".equals(url.getProtocol())) {
+                    final URLConnection connection = url.openConnection();
+                    if (connection instanceof final JarURLConnection jarConnection) {
+                        jarConnection.setUseCaches(false);
+                        try (final JarFile jarFile = jarConnection.getJarFile()) {
+                            collectClassNames(jarFile, packagePath, classNames);
+                        }
+                    }
+                }
+            }
+        } catch (final IOException | URISyntaxException e) {
+            throw new SerializationException(String.format("Failed searching package [%s] for serialized types.", packageName), e);
+        }
+
+        final ArrayList<Class<?>> types = new ArrayList<>();
+        for (final String className : classNames) {
+            try {
+                final Class<?> type = Class.forName(className, false, classLoader);
+                if (!type.isInterface() && SerializerUtils.isSerializedType(type)) {
+                    types.add(type);
+                }
+            } catch (final ClassNotFoundException | LinkageError ignored) {
+                // Types with missing dependencies cannot be serialized either.
+            }
+        }
+        return types;
+    }
+
+    private SerializerPrewarmer(final Executor executor) {
+        this.executor = executor;
+    }
+
+    private void schedule(Class<?> type, final boolean isReferenced) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+
+        // Skip types visitors are required or likely to handle themselves.
+        if (type.isPrimitive() || type.isEnum() || type.isInterface() || type == Object.class || type == String.class) {
+            return;
+        }
+
+        if (isReferenced && !isPrewarmed(type)) {
+            return;
+        }
+
+        if (!seenTypes.add(type)) {
+            return;
+        }
+
+        pendingCount.incrementAndGet();
+        final Class<?> scheduledType = type;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(scheduledType);
+                } finally {
+                    release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            errors.add(e);
+            release();
+        }
+    }
+
+    private void generate(final Class<?> type) {
+        try {
+            Serializer<?> serializer = Ceres.getSerializer(type, false);
+            if (serializer == null) {
+                final long start = System.nanoTime();
+                serializer = Ceres.getSerializer(type);
+                timings.put(type, Duration.ofNanos(System.nanoTime() - start));
+            }
+
+            // Explicit serializers decide themselves what they serialize, only follow generated ones.
+            if (serializer instanceof GeneratedSerializer) {
+                for (final Class<?> referencedType : SerializerUtils.collectReferencedTypes(type)) {
+                    schedule(referencedType, true);
+                }
+            }
+        } catch (final Throwable e) {
+            errors.add(e);
+        }
+    }
+
+    private static boolean isPrewarmed(final Class<?> type) {
+        try {
+            return Ceres.getSerializer(type, false) != null || SerializerUtils.hasSerializableFields(type);
+        } catch (final SerializationException e) {
+            return true; // Let generating the serializer report this.
+        }
+    }
+
+    private void release() {
+        if (pendingCount.decrementAndGet() != 0) {
+            return;
+        }
+
+        final Throwable error = errors.poll();
+        if (error == null) {
+            result.complete(Collections.unmodifiableMap(new HashMap<>(timings)));
+        } else {
+            for (final Throwable suppressed : errors) {
+                error.addSuppressed(suppressed);
+            }
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static void collectClassNames(final Path directory, final String packageName, final ArrayList<String> classNames) throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory)) {
+            paths.forEach(path -> {
+                final String relativePath = directory.relativize(path).toString();
+                if (relativePath.endsWith(CLASS_FILE_SUFFIX)) {
+                    final String relativeName = relativePath.substring(0, relativePath.length() - CLASS_FILE_SUFFIX.length()).replace(File.separatorChar, '.');
+                    classNames.add(packageName.isEmpty() ? relativeName : packageName + "." + relativeName);
+                }
+            });
+        }
+    }
+
+    private static void collectClassNames(final JarFile jarFile, final String packagePath, final ArrayList<String> classNames) {
+        final Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            final String entryName = entries.nextElement().getName();
+            if (entryName.startsWith(packagePath + "/") && entryName.endsWith(CLASS_FILE_SUFFIX)) {
+                classNames.add(entryName.substring(0, entryName.length() - CLASS_FILE_SUFFIX.length()).replace('/', '.'));
+            }
+        }
+    }
+}
@@ -5,17 +5,126 @@ import li.cil.ceres.api.SerializationException;
 import li.cil.ceres.api.Serialized;
 import li.cil.ceres.api.Serializer;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import javax.annotation.Nullable;
+import java.lang.reflect.*;
 import java.util.ArrayList;
 
 final class SerializerUtils {
     static ArrayList<Field> collectSerializableFields(final Class<?> type) throws SerializationException {
-        return collectSerializableFields(type, new ArrayList<>());
+        final ArrayList<Field> fields = collectSerializableFields(type, new ArrayList<>());
+
+        final Executable creator = findCreator(type);
+        if (creator != null) {
+            final Class<?>[] parameterTypes = creator.getParameterTypes();
+            boolean isMatching = parameterTypes.length == fields.size();
+            for (int i = 0; isMatching && i < parameterTypes.length; i++) {
+                isMatching = parameterTypes[i] == fields.get(i).getType();
+            }
+            if (!isMatching) {
+                throw new SerializationException(String.format("Parameters of [%s] do not match the serialized fields of type [%s].", creator, type.getName()));
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * Finds the constructor or static factory method creating values of a type during deserialization, if the
+     * type does not use its default constructor for that: the canonical constructor of records, or the constructor
+     * or static method annotated with {@link Serialized}. Its parameters take the values of the serialized fields,
+     * in the order of their declaration.
+     */
+    @Nullable
+    static Executable findCreator(final Class<?> type) throws SerializationException {
+        if (type.isRecord()) {
+            final RecordComponent[] components = type.getRecordComponents();
+            final Class<?>[] parameterTypes = new Class<?>[components.length];
+            for (int i = 0; i < components.length; i++) {
+                parameterTypes[i] = components[i].getType();
+            }
+            try {
+                return type.getDeclaredConstructor(parameterTypes);
+            } catch (final NoSuchMethodException e) {
+                throw new SerializationException(String.format("Failed finding canonical constructor of record [%s].", type.getName()), e);
+            }
+        }
+
+        Executable creator = null;
+        for (final Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(Serialized.class)) {
+                if (Modifier.isAbstract(type.getModifiers())) {
+                    throw new SerializationException(String.format("Cannot create new instance of abstract type [%s].", type));
+                }
+                creator = selectCreator(type, creator, constructor);
+            }
+        }
+        for (final Method method : type.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Serialized.class)) {
+                if (!Modifier.isStatic(method.getModifiers()) || method.getReturnType() != type) {
+                    throw new SerializationException(String.format("Trying to use serialization on method [%s.%s] that is not a static factory method for the type.", type.getName(), method.getName()));
+                }
+                creator = selectCreator(type, creator, method);
+            }
+        }
+        return creator;
+    }
+
+    static ArrayList<Class<?>> collectReferencedTypes(final Class<?> type) throws SerializationException {
+        final ArrayList<Class<?>> types = new ArrayList<>();
+        for (final Field field : collectSerializableFields(type)) {
+            types.add(field.getType());
+        }
+
+        final Class<?> parentType = type.getSuperclass();
+        if (parentType != null && parentType != Object.class && parentType != Record.class) {
+            types.add(parentType);
+        }
+
+        return types;
+    }
+
+    /**
+     * Selects the fields covered by the null mask of a generated serializer: the first 64 non-primitive fields.
+     */
+    static ArrayList<Field> collectNullMaskFields(final ArrayList<Field> fields) {
+        final ArrayList<Field> nullMaskFields = new ArrayList<>();
+        for (final Field field : fields) {
+            if (!field.getType().isPrimitive() && nullMaskFields.size() < Long.SIZE) {
+                nullMaskFields.add(field);
+            }
+        }
+        return nullMaskFields;
+    }
+
+    static boolean isSerializedType(final Class<?> type) {
+        if (type.isAnnotationPresent(Serialized.class)) {
+            return true;
+        }
+
+        for (final Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Serialized.class)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static boolean hasSerializableFields(final Class<?> type) throws SerializationException {
+        return hasSerializableFields(type, new ArrayList<>());
+    }
+
+    private static Executable selectCreator(final Class<?> type, @Nullable final Executable creator, final Executable candidate) {
+        if (creator != null) {
+            throw new SerializationException(String.format("Trying to use serialization on multiple constructors or factory methods of type [%s].", type.getName()));
+        }
+        return candidate;
     }
 
     private static ArrayList<Field> collectSerializableFields(final Class<?> type, final ArrayList<Class<?>> seenTypes) {
-        final boolean serializeFields = type.isAnnotationPresent(Serialized.class);
+        // Values of records are always created using their canonical constructor, taking all of their components.
+        final boolean serializeFields = type.isAnnotationPresent(Serialized.class) || type.isRecord();
+        final boolean isCreated = findCreator(type) != null;
         final ArrayList<Field> fields = new ArrayList<>();
         for (final Field field : type.getDeclaredFields()) {
             // We do not serialize synthetic fields (e.g. reference to parent class for non-static inner classes).
@@ -41,7 +150,8 @@ final class SerializerUtils {
 
             // We do not serialize final fields holding immutable values.
             // We *do* serialize final fields holding values that we can deserialize into.
-            if (Modifier.isFinal(field.getModifiers()) && isImmutable(field.getType(), concat(seenTypes, type))) {
+            // We also serialize all final fields of types created using a constructor taking their values.
+            if (!isCreated && Modifier.isFinal(field.getModifiers()) && isImmutable(field.getType(), concat(seenTypes, type))) {
                 if (field.isAnnotationPresent(Serialized.class)) {
                     throw new SerializationException(String.format("Trying to use serialization on immutable field [%s.%s].", type.getName(), field.getName()));
                 }
@@ -61,6 +171,7 @@ final class SerializerUtils {
         if (type.isPrimitive()) return true; // Primitives are immutable by definition.
         if (type.isEnum()) return true; // Enum values are immutable by definition.
         if (type.isArray()) return false; // Arrays are mutable by definition.
+        if (findCreator(type) != null) return true; // Values created anew on deserialization cannot be deserialized into.
 
         final Serializer<?> serializer = Ceres.getSerializer(type, false);
         if (serializer != null && (!(serializer instanceof GeneratedSerializer) || ((GeneratedSerializer) serializer).hasSerializedFields()))
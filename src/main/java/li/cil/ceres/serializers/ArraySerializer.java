@@ -20,4 +20,9 @@ public final class ArraySerializer implements Serializer {
     public Object deserialize(final DeserializationVisitor visitor, final Class type, @Nullable final Object value) throws SerializationException {
         return visitor.getObject("value", type, value);
     }
+
+    @Override
+    public void skip(final DeserializationVisitor visitor, final Class type) throws SerializationException {
+        visitor.skip("value", type);
+    }
 }
@@ -38,11 +38,12 @@ public final class ByteBufferSerializer implements Serializer<ByteBuffer> {
     @Override
     public ByteBuffer deserialize(final DeserializationVisitor visitor, final Class<ByteBuffer> type, @Nullable final Object value) throws SerializationException {
         ByteBuffer buffer = (ByteBuffer) value;
-        if (!visitor.exists("capacity") ||
-            !visitor.exists("position") ||
-            !visitor.exists("limit") ||
-            !visitor.exists("mark") ||
-            !visitor.exists("value")) {
+        if (!visitor.isPositional() &&
+            (!visitor.exists("capacity") ||
+             !visitor.exists("position") ||
+             !visitor.exists("limit") ||
+             !visitor.exists("mark") ||
+             !visitor.exists("value"))) {
             return buffer;
         }
 
@@ -73,4 +74,22 @@ public final class ByteBufferSerializer implements Serializer<ByteBuffer> {
 
         return buffer;
     }
+
+    @Override
+    public void skip(final DeserializationVisitor visitor, final Class<ByteBuffer> type) throws SerializationException {
+        if (!visitor.isPositional() &&
+            (!visitor.exists("capacity") ||
+             !visitor.exists("position") ||
+             !visitor.exists("limit") ||
+             !visitor.exists("mark") ||
+             !visitor.exists("value"))) {
+            return;
+        }
+
+        visitor.skip("capacity", int.class);
+        visitor.skip("position", int.class);
+        visitor.skip("limit", int.class);
+        visitor.skip("mark", int.class);
+        visitor.skip("value", byte[].class);
+    }
 }
@@ -20,7 +20,7 @@ public final class UUIDSerializer implements Serializer<UUID> {
 
     @Override
     public UUID deserialize(final DeserializationVisitor visitor, final Class<UUID> type, @Nullable final Object value) throws SerializationException {
-        if (!visitor.exists("msb") || !visitor.exists("lsb")) {
+        if (!visitor.isPositional() && (!visitor.exists("msb") || !visitor.exists("lsb"))) {
             return (UUID) value;
         }
 
@@ -29,4 +29,14 @@ public final class UUIDSerializer implements Serializer<UUID> {
 
         return new UUID(msb, lsb);
     }
+
+    @Override
+    public void skip(final DeserializationVisitor visitor, final Class<UUID> type) throws SerializationException {
+        if (!visitor.isPositional() && (!visitor.exists("msb") || !visitor.exists("lsb"))) {
+            return;
+        }
+
+        visitor.skip("msb", long.class);
+        visitor.skip("lsb", long.class);
+    }
 }
@@ -4,10 +4,12 @@ import li.cil.ceres.api.*;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.*;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.UUID;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +18,7 @@ public final class SerializationTests {
     public void unregisterTestSerializers() {
         Ceres.putSerializer(PolymorphicFieldType.class, null);
         Ceres.putSerializer(Custom.class, null);
+        Ceres.putSerializer(ReferenceParent.class, null);
     }
 
     @Test
@@ -36,6 +39,7 @@ public final class SerializationTests {
         value.uuidValue = uuid;
 
         final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        assertEquals(serialized.remaining(), serialized.array().length);
 
         Flat deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized, Flat.class, new Flat()));
 
@@ -138,6 +142,178 @@ public final class SerializationTests {
         assertEquals(value.sup2, deserialized.sup2);
     }
 
+    @Test
+    public void testFlatHierarchies() {
+        final Subclass value = new Subclass();
+        value.val = 123;
+        value.sup1 = 234;
+        value.sup2 = 345;
+
+        // Two serialized ints, each superclass preceded by a flag marking it as present.
+        assertEquals(2 * Integer.BYTES + 2, BinarySerialization.serialize(value).remaining());
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withFlatHierarchies(true);
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value, Subclass.class, options));
+        assertEquals(BinarySerialization.serialize(value, Subclass.class, BinarySerialization.Options.DEFAULT).remaining() - 2, serialized.remaining());
+        assertEquals(serialized.remaining(), BinarySerialization.sizeOf(value, Subclass.class, options));
+
+        final Subclass deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized.duplicate(), Subclass.class, null, options));
+        assertEquals(value.val, deserialized.val);
+        assertEquals(0, deserialized.sup1);
+        assertEquals(value.sup2, deserialized.sup2);
+
+        final ByteBuffer skipped = serialized.duplicate();
+        BinarySerialization.skipNext(skipped, Subclass.class, options);
+        assertFalse(skipped.hasRemaining());
+    }
+
+    @Test
+    public void testInlinedSuperclassReferenceFields() {
+        final ReferenceChild value = new ReferenceChild();
+        value.child = "child";
+        value.parent = "parent";
+        value.grandparent = "grandparent";
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        final ReferenceChild deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized.duplicate(), ReferenceChild.class));
+        assertEquals(value.child, deserialized.child);
+        assertEquals(value.parent, deserialized.parent);
+        assertEquals(value.grandparent, deserialized.grandparent);
+
+        // An explicit serializer for the superclass prevents inlining its fields, which must not change the format.
+        final Serializer<ReferenceParent> generated = Ceres.getSerializer(ReferenceParent.class);
+        Ceres.putSerializer(ReferenceParent.class, new Serializer<>() {
+            @Override
+            public void serialize(final SerializationVisitor visitor, final Class<ReferenceParent> type, final Object value) throws SerializationException {
+                generated.serialize(visitor, type, value);
+            }
+
+            @Override
+            public ReferenceParent deserialize(final DeserializationVisitor visitor, final Class<ReferenceParent> type, final Object value) throws SerializationException {
+                return generated.deserialize(visitor, type, value);
+            }
+        });
+        assertEquals(serialized, BinarySerialization.serialize(value));
+    }
+
+    @Test
+    public void testNonPositionalVisitor() {
+        final DeserializationVisitor visitor = new DeserializationVisitor() {
+            @Override
+            public boolean exists(final String name) {
+                return "value".equals(name);
+            }
+
+            @Override
+            public int getInt(final String name) {
+                return 42;
+            }
+
+            @Override
+            public boolean getBoolean(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public byte getByte(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public char getChar(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public short getShort(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public long getLong(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public float getFloat(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public double getDouble(final String name) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public Object getObject(final String name, final Class<?> type, final Object into) {
+                throw new AssertionError();
+            }
+        };
+
+        final Recursive value = new Recursive();
+        value.child = new Recursive();
+
+        final Recursive deserialized = assertDoesNotThrow(() -> Ceres.getSerializer(Recursive.class).deserialize(visitor, Recursive.class, value));
+        assertEquals(42, deserialized.value);
+        assertSame(value.child, deserialized.child);
+        assertDoesNotThrow(() -> Ceres.getSerializer(Recursive.class).skip(visitor, Recursive.class));
+    }
+
+    @Test
+    public void testRecord() {
+        final Line value = new Line(new Point(1, 2.5), new Point(-3, 4.5), "line", new int[]{5, 6}, 7L);
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        final Line deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized.duplicate(), Line.class));
+        assertEquals(value.from(), deserialized.from());
+        assertEquals(value.to(), deserialized.to());
+        assertEquals(value.name(), deserialized.name());
+        assertArrayEquals(value.values(), deserialized.values());
+        assertEquals(value.length(), deserialized.length());
+
+        // Records are immutable, deserializing "into" one creates a new record.
+        final Line into = new Line(null, null, null, null, 0);
+        final Line created = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized.duplicate(), Line.class, into));
+        assertNotSame(into, created);
+        assertEquals(value.from(), created.from());
+
+        final ByteBuffer skipped = serialized.duplicate();
+        BinarySerialization.skipNext(skipped, Line.class);
+        assertFalse(skipped.hasRemaining());
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withFlatHierarchies(true).withCompactNumbers(true);
+        final ByteBuffer serializedWithOptions = assertDoesNotThrow(() -> BinarySerialization.serialize(value, Line.class, options));
+        assertEquals(value.to(), BinarySerialization.deserialize(serializedWithOptions, Line.class, null, options).to());
+    }
+
+    @Test
+    public void testSerializedFactoryMethod() {
+        final ImmutableValue value = ImmutableValue.create(42, "value", new long[]{1, 2, 3});
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        final ImmutableValue deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized, ImmutableValue.class));
+        assertEquals(value.number, deserialized.number);
+        assertEquals(value.name, deserialized.name);
+        assertArrayEquals(value.values, deserialized.values);
+        assertTrue(deserialized.isCreated);
+
+        assertThrows(SerializationException.class, () -> Ceres.getSerializer(MismatchedConstructor.class));
+    }
+
+    @Test
+    public void testSubclassOfSerializedConstructor() {
+        final CreatedSubclass value = new CreatedSubclass(42);
+        value.value = 23;
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        final CreatedSubclass deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized.duplicate(), CreatedSubclass.class));
+        assertEquals(value.value, deserialized.value);
+
+        final ByteBuffer skipped = serialized.duplicate();
+        BinarySerialization.skipNext(skipped, CreatedSubclass.class);
+        assertFalse(skipped.hasRemaining());
+    }
+
     @Test
     public void testPrimitiveArray() {
         final byte[] value = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
@@ -149,6 +325,39 @@ public final class SerializationTests {
         assertArrayEquals(value, deserialized);
     }
 
+    @Test
+    public void testBulkPrimitiveArrays() {
+        final PrimitiveArrays value = new PrimitiveArrays();
+        for (int i = 0; i < value.ints.length; i++) {
+            value.chars[i] = (char) i;
+            value.shorts[i] = (short) -i;
+            value.ints[i] = i * 31;
+            value.longs[i] = i * 0x1_0000_0001L;
+            value.floats[i] = i / 3f;
+            value.doubles[i] = i / 7.0;
+        }
+        value.floats[1] = Float.intBitsToFloat(0x7fc00123);
+        value.doubles[1] = Double.longBitsToDouble(0x7ff8000000000123L);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> BinarySerialization.serialize(new DataOutputStream(stream), value));
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        assertEquals(ByteBuffer.wrap(stream.toByteArray()), serialized);
+
+        final PrimitiveArrays deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized, PrimitiveArrays.class));
+        assertArrayEquals(value.chars, deserialized.chars);
+        assertArrayEquals(value.shorts, deserialized.shorts);
+        assertArrayEquals(value.ints, deserialized.ints);
+        assertArrayEquals(value.longs, deserialized.longs);
+        assertArrayEquals(value.floats, deserialized.floats);
+        assertArrayEquals(value.doubles, deserialized.doubles);
+        assertEquals(Float.floatToRawIntBits(Float.NaN), Float.floatToRawIntBits(deserialized.floats[1]));
+
+        final PrimitiveArrays streamed = assertDoesNotThrow(() -> BinarySerialization.deserialize(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())), PrimitiveArrays.class));
+        assertArrayEquals(value.longs, streamed.longs);
+        assertArrayEquals(value.doubles, streamed.doubles);
+    }
+
     @Test
     public void testObjectArray() {
         final Flat[] value = new Flat[2];
@@ -164,6 +373,385 @@ public final class SerializationTests {
         assertArrayEquals(value, deserialized);
     }
 
+    @Test
+    public void testStreamObjectArray() throws IOException {
+        final MultiDimArray[] value = new MultiDimArray[2000];
+        for (int i = 0; i < value.length; i += 2) {
+            value[i] = new MultiDimArray();
+            value[i].array[1][2] = i;
+        }
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(stream);
+        assertDoesNotThrow(() -> BinarySerialization.serialize(output, value));
+        output.writeInt(0xC0FFEE);
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value));
+        assertEquals(serialized, ByteBuffer.wrap(stream.toByteArray(), 0, stream.size() - Integer.BYTES));
+
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        final MultiDimArray[] deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(input, MultiDimArray[].class));
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == null) {
+                assertNull(deserialized[i]);
+            } else {
+                assertArrayEquals(value[i].array[1], deserialized[i].array[1]);
+            }
+        }
+        assertEquals(0xC0FFEE, input.readInt());
+    }
+
+    @Test
+    public void testCompactNumbers() {
+        final Flat[] value = new Flat[3];
+        value[0] = new Flat();
+        value[0].intValue = -1;
+        value[0].longValue = Long.MIN_VALUE;
+        value[0].intArrayValue = new int[]{0, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        value[2] = new Flat();
+        value[2].stringValue = "a string long enough to require a multi-byte element length: ".repeat(4);
+        value[2].longArrayValue = new long[]{Long.MAX_VALUE, 1, -2};
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withCompactNumbers(true);
+        final ByteBuffer fixed = BinarySerialization.serialize(value, Flat[].class, BinarySerialization.Options.DEFAULT);
+        final ByteBuffer compact = BinarySerialization.serialize(value, Flat[].class, options);
+        assertTrue(compact.remaining() < fixed.remaining());
+
+        final ByteBuffer direct = BinarySerialization.serialize(ByteBuffer.allocateDirect(16), value, Flat[].class, options).flip();
+        assertEquals(compact, direct);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> BinarySerialization.serialize(new DataOutputStream(stream), value, Flat[].class, options));
+        assertEquals(compact, ByteBuffer.wrap(stream.toByteArray()));
+
+        for (final ByteBuffer serialized : List.of(fixed, compact)) {
+            final Flat[] deserialized = BinarySerialization.deserialize(serialized, Flat[].class, null, BinarySerialization.Options.DEFAULT);
+            assertEquals(value[0].intValue, deserialized[0].intValue);
+            assertEquals(value[0].longValue, deserialized[0].longValue);
+            assertArrayEquals(value[0].intArrayValue, deserialized[0].intArrayValue);
+            assertNull(deserialized[1]);
+            assertEquals(value[2].stringValue, deserialized[2].stringValue);
+            assertArrayEquals(value[2].longArrayValue, deserialized[2].longArrayValue);
+        }
+
+        final Flat[] streamed = BinarySerialization.deserialize(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())), Flat[].class, null, options);
+        assertEquals(value[2].stringValue, streamed[2].stringValue);
+
+        assertThrows(SerializationException.class, () -> BinarySerialization.deserialize(BinarySerialization.serialize(value), Flat[].class, null, options));
+    }
+
+    @Test
+    public void testStringCodec() {
+        final Strings value = new Strings();
+        value.data = new String[]{"", "ascii", "latin-1 \u00e4\u00f6\u00fc", "utf-8 \u20ac \ud83d\ude00 \u0000", "x".repeat(100_000)};
+
+        assertThrows(SerializationException.class, () -> BinarySerialization.serialize(value));
+
+        final ByteBuffer serialized = BinarySerialization.serialize(ByteBuffer.allocateDirect(64), value, Strings.class, BinarySerialization.Options.DEFAULT).flip();
+        assertTrue(serialized.remaining() < 100_000 + 100);
+
+        final Strings deserialized = BinarySerialization.deserialize(serialized, Strings.class, null, BinarySerialization.Options.DEFAULT);
+        assertArrayEquals(value.data, deserialized.data);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BinarySerialization.serialize(new DataOutputStream(stream), value, Strings.class, BinarySerialization.Options.DEFAULT);
+        final Strings streamed = BinarySerialization.deserialize(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())), Strings.class, null, BinarySerialization.Options.DEFAULT);
+        assertArrayEquals(value.data, streamed.data);
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        final BinarySerialization.Session session = BinarySerialization.Session.create(BinarySerialization.Options.DEFAULT.withCompactNumbers(true));
+        final Flat value = new Flat();
+        value.intArrayValue = new int[1000];
+
+        final ByteBuffer first = session.serialize(value, Flat.class);
+        assertEquals(BinarySerialization.serialize(value, Flat.class, BinarySerialization.Options.DEFAULT.withCompactNumbers(true)), first);
+        final Flat deserialized = session.deserialize(first, Flat.class, null);
+        assertArrayEquals(value.intArrayValue, deserialized.intArrayValue);
+
+        value.intValue = 42;
+        final ByteBuffer second = session.serialize(value, Flat.class);
+        assertSame(first.array(), second.array());
+        assertEquals(42, session.deserialize(second, Flat.class, null).intValue);
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(stream);
+        session.serialize(output, value, Flat.class);
+        session.serialize(output, value, Flat.class);
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(42, session.deserialize(input, Flat.class, null).intValue);
+        assertEquals(42, session.deserialize(input, Flat.class, null).intValue);
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    public void testSizeOf() {
+        final Flat[] value = new Flat[3];
+        value[0] = new Flat();
+        value[0].intValue = -123456;
+        value[0].longValue = Long.MAX_VALUE;
+        value[0].stringValue = "surrogates \ud83d\ude00 \ud800 \u00e4\u20ac";
+        value[0].intArrayValue = new int[]{1, -2, 300};
+        value[2] = new Flat();
+        value[2].stringValue = "long".repeat(100);
+        value[2].longArrayValue = new long[]{-1, Long.MIN_VALUE};
+
+        assertEquals(BinarySerialization.serialize(value).remaining(), BinarySerialization.sizeOf(value, Flat[].class));
+        for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT, BinarySerialization.Options.DEFAULT.withCompactNumbers(true), BinarySerialization.Options.DEFAULT.withBitPacking(true))) {
+            assertEquals(BinarySerialization.serialize(value, Flat[].class, options).remaining(), BinarySerialization.sizeOf(value, Flat[].class, options));
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        final Flat[] value = new Flat[500];
+        for (int i = 0; i < value.length; i += 3) {
+            value[i] = new Flat();
+            value[i].intValue = i;
+            value[i].stringValue = "value " + i;
+            value[i].longArrayValue = new long[i % 50];
+        }
+
+        final Path file = Files.createTempFile("ceres", ".bin");
+        try {
+            for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT, BinarySerialization.Options.DEFAULT.withCompactNumbers(true))) {
+                BinarySerialization.serialize(file, value, Flat[].class, options);
+                assertEquals(BinarySerialization.serialize(value, Flat[].class, options), ByteBuffer.wrap(Files.readAllBytes(file)));
+
+                final Flat[] deserialized = BinarySerialization.deserialize(file, Flat[].class, null, options);
+                for (int i = 0; i < value.length; i++) {
+                    if (value[i] == null) {
+                        assertNull(deserialized[i]);
+                    } else {
+                        assertEquals(value[i].stringValue, deserialized[i].stringValue);
+                        assertArrayEquals(value[i].longArrayValue, deserialized[i].longArrayValue);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testFailedFileSerializationKeepsFile() throws IOException {
+        final Path directory = Files.createTempDirectory("ceres");
+        final Path file = directory.resolve("value.bin");
+        try {
+            BinarySerialization.serialize(file, new int[]{1, 2, 3}, int[].class);
+            final byte[] serialized = Files.readAllBytes(file);
+
+            Ceres.putSerializer(Custom.class, new Serializer<>() {
+                @Override
+                public void serialize(final SerializationVisitor visitor, final Class<Custom> type, final Object value) throws SerializationException {
+                    visitor.putInt("x", 1);
+                    throw new SerializationException("failed");
+                }
+
+                @Override
+                public Custom deserialize(final DeserializationVisitor visitor, final Class<Custom> type, final Object value) throws SerializationException {
+                    throw new SerializationException("failed");
+                }
+            });
+            assertThrows(SerializationException.class, () -> BinarySerialization.serialize(file, new Custom(), Custom.class));
+
+            assertArrayEquals(serialized, Files.readAllBytes(file));
+            try (final java.util.stream.Stream<Path> files = Files.list(directory)) {
+                assertEquals(List.of(file), files.toList());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        final Random random = new Random(0);
+        final Flat[] value = new Flat[200];
+        for (int i = 0; i < value.length; i += 2) {
+            value[i] = new Flat();
+            value[i].intValue = i;
+            value[i].stringValue = "value " + i;
+            value[i].longArrayValue = new long[i];
+            value[i].byteArrayValue = new byte[i];
+            random.nextBytes(value[i].byteArrayValue);
+        }
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withCompression(true).withBlockSize(512);
+        final ByteBuffer serialized = BinarySerialization.serialize(value, Flat[].class, options);
+        assertEquals(serialized.remaining(), BinarySerialization.sizeOf(value, Flat[].class, options));
+        assertTrue(serialized.remaining() < BinarySerialization.sizeOf(value, Flat[].class, BinarySerialization.Options.DEFAULT));
+        assertArrayEquals(value, BinarySerialization.deserialize(serialized, Flat[].class, null, options));
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(stream);
+        BinarySerialization.serialize(output, value, Flat[].class, options);
+        output.writeInt(42);
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        assertArrayEquals(value, BinarySerialization.deserialize(input, Flat[].class, null, options));
+        assertEquals(42, input.readInt());
+
+        final Path file = Files.createTempFile("ceres", ".bin");
+        try {
+            BinarySerialization.serialize(file, value, Flat[].class, options);
+            assertArrayEquals(value, BinarySerialization.deserialize(file, Flat[].class, null, options));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testChecksums() {
+        final PrimitiveArrays value = new PrimitiveArrays();
+        Arrays.fill(value.ints, 42);
+
+        for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT.withChecksums(true), BinarySerialization.Options.DEFAULT.withChecksums(true).withCompression(true))) {
+            final ByteBuffer serialized = BinarySerialization.serialize(value, PrimitiveArrays.class, options);
+            assertEquals(serialized.remaining(), BinarySerialization.sizeOf(value, PrimitiveArrays.class, options));
+            assertArrayEquals(value.ints, BinarySerialization.deserialize(serialized, PrimitiveArrays.class, null, options).ints);
+
+            final ByteBuffer truncated = serialized.duplicate().limit(serialized.limit() - 10);
+            assertThrows(SerializationException.class, () -> BinarySerialization.deserialize(truncated, PrimitiveArrays.class, null, options));
+
+            final byte[] corrupted = new byte[serialized.remaining()];
+            serialized.get(0, corrupted);
+            corrupted[corrupted.length - 10] ^= 1;
+            assertThrows(SerializationException.class, () -> BinarySerialization.deserialize(ByteBuffer.wrap(corrupted), PrimitiveArrays.class, null, options));
+            assertThrows(SerializationException.class, () -> BinarySerialization.deserialize(new DataInputStream(new ByteArrayInputStream(corrupted)), PrimitiveArrays.class, null, options));
+        }
+    }
+
+    @Test
+    public void testParallelArrays() throws IOException {
+        final Flat[][] value = new Flat[300][];
+        for (int i = 0; i < value.length; i += 2) {
+            value[i] = new Flat[i % 7];
+            for (int j = 0; j < value[i].length; j++) {
+                value[i][j] = new Flat();
+                value[i][j].intValue = i * j;
+                value[i][j].stringValue = "value " + i;
+                value[i][j].intArrayValue = new int[j * 50];
+            }
+        }
+
+        for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT, BinarySerialization.Options.DEFAULT.withCompactNumbers(true))) {
+            final BinarySerialization.Options parallel = options.withParallelThreshold(5);
+            final ByteBuffer serialized = BinarySerialization.serialize(value, Flat[][].class, parallel);
+            assertEquals(BinarySerialization.serialize(value, Flat[][].class, options), serialized);
+            assertArrayEquals(value, BinarySerialization.deserialize(serialized, Flat[][].class, null, options));
+
+            assertArrayEquals(value, BinarySerialization.deserialize(serialized, Flat[][].class, null, parallel));
+            final ByteBuffer direct = ByteBuffer.allocateDirect(serialized.remaining()).put(serialized.duplicate()).flip();
+            assertArrayEquals(value, BinarySerialization.deserialize(direct, Flat[][].class, null, parallel));
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            BinarySerialization.serialize(new DataOutputStream(stream), value, Flat[][].class, parallel);
+            assertEquals(serialized, ByteBuffer.wrap(stream.toByteArray()));
+            assertArrayEquals(value, BinarySerialization.deserialize(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())), Flat[][].class, null, parallel));
+
+            final Path file = Files.createTempFile("ceres", ".bin");
+            try {
+                BinarySerialization.serialize(file, value, Flat[][].class, parallel);
+                assertArrayEquals(value, BinarySerialization.deserialize(file, Flat[][].class, null, parallel));
+                BinarySerialization.serialize(file, value, Flat[][].class, parallel.withCompression(true).withBlockSize(1024));
+                assertArrayEquals(value, BinarySerialization.deserialize(file, Flat[][].class, null, parallel));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        final Flat flat = new Flat();
+        flat.stringValue = "skipped";
+        flat.longArrayValue = new long[]{1, 2, 3};
+        flat.uuidValue = UUID.randomUUID();
+        final Flat[] flats = {flat, null, flat};
+        final MultiDimArray multiDimArray = new MultiDimArray();
+
+        for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT, BinarySerialization.Options.DEFAULT.withCompactNumbers(true), BinarySerialization.Options.DEFAULT.withCompression(true))) {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(stream);
+            BinarySerialization.serialize(output, flat, Flat.class, options);
+            BinarySerialization.serialize(output, flats, Flat[].class, options);
+            BinarySerialization.serialize(output, multiDimArray, MultiDimArray.class, options);
+            output.writeInt(42);
+
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(stream.toByteArray()));
+            BinarySerialization.skip(input, Flat.class, options);
+            BinarySerialization.skip(input, Flat[].class, options);
+            assertArrayEquals(multiDimArray.array, BinarySerialization.deserialize(input, MultiDimArray.class, null, options).array);
+            assertEquals(42, input.readInt());
+
+            final ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray());
+            BinarySerialization.skipNext(buffer, Flat.class, options);
+            BinarySerialization.skipNext(buffer, Flat[].class, options);
+            BinarySerialization.skipNext(buffer, MultiDimArray.class, options);
+            assertEquals(42, buffer.getInt());
+        }
+    }
+
+    @Test
+    public void testLazyArray() {
+        final Flat[] flats = new Flat[3];
+        flats[0] = new Flat();
+        flats[0].intValue = 1;
+        flats[2] = new Flat();
+        flats[2].stringValue = "lazy";
+
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(flats, Flat[].class));
+        final LazyArray<Flat> lazy = assertDoesNotThrow(() -> BinarySerialization.deserializeLazy(serialized, Flat.class));
+        assertEquals(flats.length, lazy.length());
+        assertFalse(lazy.isDecoded(2));
+        assertEquals(flats[2], lazy.get(2));
+        assertTrue(lazy.isDecoded(2));
+        assertFalse(lazy.isDecoded(0));
+        assertSame(lazy.get(2), lazy.get(2));
+        assertNull(lazy.get(1));
+        assertEquals(flats[0], lazy.get(0));
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withCompression(true).withBlockSize(64);
+        final ByteBuffer compressed = assertDoesNotThrow(() -> BinarySerialization.serialize(flats, Flat[].class, options));
+        final LazyArray<Flat> lazyCompressed = assertDoesNotThrow(() -> BinarySerialization.deserializeLazy(compressed, Flat.class, options));
+        int index = 0;
+        for (final Flat flat : lazyCompressed) {
+            assertEquals(flats[index++], flat);
+        }
+        assertEquals(flats.length, index);
+
+        assertThrows(SerializationException.class, () -> BinarySerialization.deserializeLazy(serialized, String.class));
+    }
+
+    @Test
+    public void testBitPacking() {
+        final Flags value = new Flags();
+        value.flags = new boolean[1001];
+        for (int i = 0; i < value.flags.length; i += 3) {
+            value.flags[i] = true;
+        }
+        value.first = new Flat();
+        value.first.stringValue = "packed";
+        value.name = "flags";
+
+        final BinarySerialization.Options options = BinarySerialization.Options.DEFAULT.withBitPacking(true);
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value, Flags.class, options));
+        assertTrue(serialized.remaining() < BinarySerialization.sizeOf(value, Flags.class, BinarySerialization.Options.DEFAULT) / 4);
+        assertEquals(serialized.remaining(), BinarySerialization.sizeOf(value, Flags.class, options));
+
+        final Flags deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized, Flags.class, null, options));
+        assertArrayEquals(value.flags, deserialized.flags);
+        assertEquals(value.first, deserialized.first);
+        assertNull(deserialized.second);
+        assertEquals(value.name, deserialized.name);
+
+        final ByteBuffer skipped = serialized.duplicate();
+        BinarySerialization.skipNext(skipped, Flags.class, options);
+        assertFalse(skipped.hasRemaining());
+    }
+
     @Test
     public void testEnums() {
         final WithEnum value = new WithEnum();
@@ -176,6 +764,36 @@ public final class SerializationTests {
         assertEquals(value.value, deserialized.value);
     }
 
+    @Test
+    public void testEnumArrays() {
+        final WithEnum value = new WithEnum();
+        value.value = WithEnum.TestEnum.ONE;
+        value.values = new WithEnum.TestEnum[1000];
+        for (int i = 0; i < value.values.length; i++) {
+            value.values[i] = i % 3 == 0 ? null : WithEnum.TestEnum.values()[i % 2];
+        }
+
+        final WithEnum deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(BinarySerialization.serialize(value), WithEnum.class));
+        assertArrayEquals(value.values, deserialized.values);
+
+        for (final BinarySerialization.Options options : List.of(BinarySerialization.Options.DEFAULT, BinarySerialization.Options.DEFAULT.withCompactNumbers(true), BinarySerialization.Options.DEFAULT.withCompactEnums(true))) {
+            final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(value, WithEnum.class, options));
+            assertEquals(serialized.remaining(), BinarySerialization.sizeOf(value, WithEnum.class, options));
+
+            final WithEnum deserializedWithOptions = assertDoesNotThrow(() -> BinarySerialization.deserialize(serialized, WithEnum.class, null, options));
+            assertEquals(value.value, deserializedWithOptions.value);
+            assertArrayEquals(value.values, deserializedWithOptions.values);
+
+            final ByteBuffer skipped = serialized.duplicate();
+            BinarySerialization.skipNext(skipped, WithEnum.class, options);
+            assertFalse(skipped.hasRemaining());
+
+            if (options.isCompactEnums()) {
+                assertTrue(serialized.remaining() < value.values.length + 16);
+            }
+        }
+    }
+
     @Test
     public void testIgnoreStaticFields() {
         final IgnoreStaticFields value = new IgnoreStaticFields();
@@ -210,6 +828,24 @@ public final class SerializationTests {
         assertEquals(value.c.x * 2 + 1, deserialized.c.x);
     }
 
+    @Test
+    public void testCustomSerializerAssignedAfterUse() {
+        final MultipleCustomSerializer value = new MultipleCustomSerializer();
+        value.a = new Custom();
+        value.a.x = 22;
+
+        // Serialize once to have serializers for the field types looked up before assigning the custom one.
+        final MultipleCustomSerializer before = assertDoesNotThrow(() -> BinarySerialization.deserialize(BinarySerialization.serialize(value), MultipleCustomSerializer.class));
+        assertNotNull(before.a);
+        assertEquals(0, before.a.x);
+
+        Ceres.putSerializer(Custom.class, new CustomSerializer());
+
+        final MultipleCustomSerializer after = assertDoesNotThrow(() -> BinarySerialization.deserialize(BinarySerialization.serialize(value), MultipleCustomSerializer.class));
+        assertNotNull(after.a);
+        assertEquals(value.a.x * 2 + 1, after.a.x);
+    }
+
     @Test
     public void testMutableIndirect() {
         final MutableIndirectRoot value = new MutableIndirectRoot();
@@ -281,6 +917,109 @@ public final class SerializationTests {
         assertArrayEquals(value.array[1], deserialized.array[1]);
     }
 
+    @Test
+    public void testDirectBuffer() {
+        final Flat[] value = new Flat[3];
+        value[0] = new Flat();
+        value[0].stringValue = "non-ascii \u00e4\u20ac\u0000";
+        value[0].intArrayValue = new int[]{1, 2, 3};
+        value[2] = new Flat();
+        value[2].longValue = 42;
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> BinarySerialization.serialize(new DataOutputStream(stream), value, Flat[].class));
+
+        // Start with a tiny buffer to force growing it while writing.
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+        buffer.position(2);
+        final ByteBuffer serialized = assertDoesNotThrow(() -> BinarySerialization.serialize(buffer, value, Flat[].class));
+        assertTrue(serialized.isDirect());
+        serialized.flip().position(2);
+        assertEquals(ByteBuffer.wrap(stream.toByteArray()), serialized);
+
+        final Flat[] deserialized = assertDoesNotThrow(() -> BinarySerialization.deserialize(ByteBuffer.wrap(stream.toByteArray()), Flat[].class));
+        assertEquals(value[0].stringValue, deserialized[0].stringValue);
+        assertArrayEquals(value[0].intArrayValue, deserialized[0].intArrayValue);
+        assertNull(deserialized[1]);
+        assertEquals(42, deserialized[2].longValue);
+    }
+
+    @Test
+    public void testDeserializeFromBufferPosition() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put((byte) 42);
+        for (int i = 0; i < 3; i++) {
+            final FlatFields value = new FlatFields();
+            value.value1 = i;
+            BinarySerialization.serialize(buffer, value, FlatFields.class);
+        }
+        buffer.flip();
+
+        final ByteBuffer slice = buffer.position(1).slice().asReadOnlyBuffer();
+        assertEquals(0, BinarySerialization.deserialize(slice, FlatFields.class).value1);
+        assertEquals(0, slice.position());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, BinarySerialization.deserializeNext(slice, FlatFields.class).value1);
+        }
+        assertFalse(slice.hasRemaining());
+        assertThrows(SerializationException.class, () -> BinarySerialization.deserializeNext(slice, FlatFields.class));
+    }
+
+    @Test
+    public void testConcurrentSerializerGeneration() throws Exception {
+        final int threadCount = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Serializer<ConcurrentlyGenerated>>> results = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return Ceres.getSerializer(ConcurrentlyGenerated.class);
+                }));
+            }
+            start.countDown();
+
+            final Serializer<ConcurrentlyGenerated> serializer = results.get(0).get();
+            assertNotNull(serializer);
+            for (final Future<Serializer<ConcurrentlyGenerated>> result : results) {
+                assertSame(serializer, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrewarm() {
+        final Map<Class<?>, java.time.Duration> timings = assertDoesNotThrow(() -> Ceres.prewarm(List.of(PrewarmRoot.class)).get());
+
+        assertTrue(timings.containsKey(PrewarmRoot.class));
+        assertTrue(timings.containsKey(PrewarmParent.class));
+        assertTrue(timings.containsKey(PrewarmChild.class));
+        assertNotNull(Ceres.getSerializer(PrewarmChild.class, false));
+        assertFalse(timings.containsKey(Integer.class));
+        assertFalse(timings.containsKey(java.time.Instant.class));
+        assertFalse(timings.containsKey(ArrayList.class));
+
+        assertThrows(ExecutionException.class, () -> Ceres.prewarm(List.of(SerializeFinalPrimitive.class)).get());
+    }
+
+    @Serialized
+    public static final class PrimitiveArrays {
+        public char[] chars = new char[5000];
+        public short[] shorts = new short[5000];
+        public int[] ints = new int[5000];
+        public long[] longs = new long[5000];
+        public float[] floats = new float[5000];
+        public double[] doubles = new double[5000];
+    }
+
+    @Serialized
+    public static final class Strings {
+        public String[] data;
+    }
+
     public static final class StringArrayTest {
         public String[] data = {"a", "b", "c"};
     }
@@ -327,6 +1066,14 @@ public final class SerializationTests {
         }
     }
 
+    @Serialized
+    public static final class Flags {
+        public boolean[] flags;
+        public Flat first;
+        public Flat second;
+        public String name;
+    }
+
     public static final class FlatFields {
         @Serialized private int value1;
         private int value2;
@@ -385,6 +1132,21 @@ public final class SerializationTests {
         int sup2;
     }
 
+    @Serialized
+    public static class ReferenceChild extends ReferenceParent {
+        String child;
+    }
+
+    @Serialized
+    public static class ReferenceParent extends ReferenceGrandparent {
+        String parent;
+    }
+
+    @Serialized
+    public static class ReferenceGrandparent {
+        String grandparent;
+    }
+
     @Serialized
     public static final class WithEnum {
         public enum TestEnum {
@@ -393,6 +1155,7 @@ public final class SerializationTests {
         }
 
         public TestEnum value;
+        public TestEnum[] values;
     }
 
     @Serialized
@@ -505,8 +1268,94 @@ public final class SerializationTests {
         }
     }
 
+    @Serialized
+    public static final class ConcurrentlyGenerated {
+        public int value;
+    }
+
+    @Serialized
+    public static class PrewarmParent {
+        public int value;
+    }
+
+    @Serialized
+    public static final class PrewarmRoot extends PrewarmParent {
+        public PrewarmChild[] children;
+        public Integer boxed;
+        public java.time.Instant instant;
+        public ArrayList<String> list;
+    }
+
+    @Serialized
+    public static final class PrewarmChild {
+        public int value;
+    }
+
     @Serialized
     public static final class MultiDimArray {
         public int[][] array = {{1, 2, 3}, {4, 5, 6}};
     }
+
+    public record Point(int x, double y) {
+    }
+
+    public record Line(Point from, Point to, String name, int[] values, long length) {
+    }
+
+    @Serialized
+    public static final class ImmutableValue {
+        public final int number;
+        public final String name;
+        public final long[] values;
+        public final transient boolean isCreated;
+
+        private ImmutableValue(final int number, final String name, final long[] values, final boolean isCreated) {
+            this.number = number;
+            this.name = name;
+            this.values = values;
+            this.isCreated = isCreated;
+        }
+
+        public static ImmutableValue create(final int number, final String name, final long[] values) {
+            return new ImmutableValue(number, name, values, false);
+        }
+
+        @Serialized
+        private static ImmutableValue deserialize(final int number, final String name, final long[] values) {
+            return new ImmutableValue(number, name, values, true);
+        }
+    }
+
+    @Serialized
+    public static class CreatedSuperclass {
+        public final int number;
+
+        @Serialized
+        public CreatedSuperclass(final int number) {
+            this.number = number;
+        }
+    }
+
+    @Serialized
+    public static final class CreatedSubclass extends CreatedSuperclass {
+        public int value;
+
+        public CreatedSubclass() {
+            this(0);
+        }
+
+        public CreatedSubclass(final int number) {
+            super(number);
+        }
+    }
+
+    @Serialized
+    public static final class MismatchedConstructor {
+        public final int number;
+
+        @Serialized
+        public MismatchedConstructor(final long number) {
+            this.number = (int) number;
+        }
+    }
 }